@@ -0,0 +1,229 @@
+package com.notificacao.service;
+
+import com.notificacao.MailnotifyApplication;
+import com.notificacao.model.EmailLog;
+import com.notificacao.repository.EmailLogRepository;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.notificacao.model.EmailStatus.PENDING;
+import static com.notificacao.model.EmailStatus.SUCCESS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Várias instâncias (contextos Spring com node-id distintos) drenando o mesmo outbox num
+ * MySQL real: o SELECT ... FOR UPDATE SKIP LOCKED + lease não tem equivalente no H2, por
+ * isso o teste sobe um MySQL pelo Testcontainers.
+ *
+ * Os logs são gravados direto no banco depois que todas as instâncias subiram, então só o
+ * polling os encontra e as instâncias disputam as mesmas linhas. O SMTP falso conta cada
+ * destinatário aceito após o DATA: cada log precisa chegar exatamente uma vez.
+ *
+ * Rodar com: mvn verify -Pintegration (precisa de Docker; sem Docker o teste é pulado)
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class EmailDispatcherMultiNodeIT {
+
+    private static final int INSTANCIAS = 3;
+    private static final int EMAILS = 2_000;
+    private static final long PRAZO_MS = 180_000;
+
+    @Container
+    static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0")
+            .withUrlParam("rewriteBatchedStatements", "true");
+
+    @TempDir
+    static Path dir;
+
+    @BeforeAll
+    static void semDevtools() {
+        // o restart do devtools trocaria o classloader de cada contexto
+        System.setProperty("spring.devtools.restart.enabled", "false");
+    }
+
+    @AfterAll
+    static void restaurarDevtools() {
+        System.clearProperty("spring.devtools.restart.enabled");
+    }
+
+    @Test
+    void cadaLogEEntregueUmaUnicaVezEntreInstancias() throws Exception {
+        try (SmtpContador smtp = new SmtpContador(2)) {
+            List<ConfigurableApplicationContext> instancias = new ArrayList<>();
+            try {
+                for (int i = 0; i < INSTANCIAS; i++) {
+                    instancias.add(subir("no-" + i, smtp.porta()));
+                }
+                EmailLogRepository repositorio = instancias.get(0).getBean(EmailLogRepository.class);
+
+                List<EmailLog> logs = new ArrayList<>(EMAILS);
+                for (int i = 0; i < EMAILS; i++) {
+                    EmailLog log = new EmailLog();
+                    log.setDestinatario("dest" + i + "@d" + (i % 50) + ".teste");
+                    log.setAssunto("it " + i);
+                    log.setConteudo("corpo " + i);
+                    log.setStatus(PENDING);
+                    logs.add(log);
+                }
+                repositorio.saveAll(logs);
+
+                List<EmailLog> finais = aguardarEntrega(repositorio);
+
+                assertEquals(EMAILS, finais.size());
+                assertTrue(finais.stream().allMatch(l -> l.getStatus() == SUCCESS),
+                        "todos os logs deveriam terminar SUCCESS");
+                assertEquals(EMAILS, smtp.entregas.size(), "cada destinatário deveria ter recebido o e-mail");
+                Map<String, Integer> repetidos = smtp.entregas.entrySet().stream()
+                        .filter(e -> e.getValue().get() != 1)
+                        .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get()));
+                assertEquals(Map.of(), repetidos, "nenhum e-mail deveria ser entregue mais de uma vez");
+
+                Set<String> donos = finais.stream().map(EmailLog::getDono).collect(Collectors.toSet());
+                assertTrue(donos.size() > 1, "as instâncias deveriam dividir o outbox: " + donos);
+            } finally {
+                for (int i = instancias.size() - 1; i >= 0; i--) {
+                    instancias.get(i).close();
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext subir(String noId, int portaSmtp) {
+        // argumentos de linha de comando: precedência sobre o application.properties
+        return new SpringApplicationBuilder(MailnotifyApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=" + MYSQL.getJdbcUrl(),
+                "--spring.datasource.username=" + MYSQL.getUsername(),
+                "--spring.datasource.password=" + MYSQL.getPassword(),
+                "--spring.mail.host=localhost",
+                "--spring.mail.port=" + portaSmtp,
+                "--spring.mail.username=",
+                "--spring.mail.password=",
+                "--spring.mail.properties.mail.smtp.auth=false",
+                "--spring.mail.properties.mail.smtp.starttls.enable=false",
+                "--mailnotify.node-id=" + noId,
+                "--mailnotify.dispatch.poll-ms=100",
+                "--mailnotify.dispatch.batch-size=20",
+                "--mailnotify.rate-limit.enabled=false",
+                "--mailnotify.attachments.dir=" + dir.resolve("anexos"),
+                "--mailnotify.campaign.spool-dir=" + dir.resolve("campanhas"));
+    }
+
+    private static List<EmailLog> aguardarEntrega(EmailLogRepository repositorio) throws InterruptedException {
+        long limite = System.currentTimeMillis() + PRAZO_MS;
+        while (true) {
+            List<EmailLog> logs = repositorio.findAll();
+            boolean pendentes = logs.stream().anyMatch(l -> l.getStatus() != SUCCESS);
+            if (!pendentes || System.currentTimeMillis() > limite) {
+                return logs;
+            }
+            Thread.sleep(500);
+        }
+    }
+
+    /** SMTP mínimo que conta, por destinatário, as mensagens aceitas (250 após o DATA). */
+    static final class SmtpContador implements AutoCloseable {
+
+        final Map<String, AtomicInteger> entregas = new ConcurrentHashMap<>();
+        private final ServerSocket server;
+        private final long atrasoMs;
+
+        SmtpContador(long atrasoMs) throws IOException {
+            this.atrasoMs = atrasoMs;
+            this.server = new ServerSocket(0, 256);
+            Thread.ofPlatform().daemon().name("smtp-contador-accept").start(this::aceitar);
+        }
+
+        int porta() {
+            return server.getLocalPort();
+        }
+
+        private void aceitar() {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    Thread.ofPlatform().daemon().name("smtp-contador").start(() -> atender(socket));
+                } catch (IOException ex) {
+                    return;
+                }
+            }
+        }
+
+        private void atender(Socket socket) {
+            try (socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                 OutputStream out = socket.getOutputStream()) {
+                responder(out, "220 localhost ESMTP it");
+                List<String> destinatarios = new ArrayList<>();
+                String linha;
+                while ((linha = in.readLine()) != null) {
+                    String cmd = linha.length() >= 4 ? linha.substring(0, 4).toUpperCase(Locale.ROOT) : linha.toUpperCase(Locale.ROOT);
+                    switch (cmd) {
+                        case "EHLO", "HELO" -> responder(out, "250 localhost");
+                        case "MAIL", "RSET" -> {
+                            destinatarios.clear();
+                            responder(out, "250 OK");
+                        }
+                        case "RCPT" -> {
+                            destinatarios.add(linha.substring(linha.indexOf('<') + 1, linha.lastIndexOf('>')).toLowerCase(Locale.ROOT));
+                            responder(out, "250 OK");
+                        }
+                        case "DATA" -> {
+                            responder(out, "354 fim com <CRLF>.<CRLF>");
+                            while ((linha = in.readLine()) != null && !linha.equals(".")) {
+                                // descarta o corpo
+                            }
+                            Thread.sleep(atrasoMs);
+                            destinatarios.forEach(d -> entregas.computeIfAbsent(d, k -> new AtomicInteger()).incrementAndGet());
+                            destinatarios.clear();
+                            responder(out, "250 OK");
+                        }
+                        case "QUIT" -> {
+                            responder(out, "221 bye");
+                            return;
+                        }
+                        default -> responder(out, "250 OK"); // NOOP
+                    }
+                }
+            } catch (IOException | InterruptedException ignored) {
+                // conexão encerrada pelo cliente
+            }
+        }
+
+        private static void responder(OutputStream out, String linha) throws IOException {
+            out.write((linha + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
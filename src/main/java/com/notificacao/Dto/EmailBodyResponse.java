@@ -0,0 +1,70 @@
+package com.notificacao.Dto;
+
+import java.util.Map;
+
+/**
+ * Corpo de um envio (GET /api/email/{id}/body): texto pronto, ou template renderizado agora.
+ * Com template, {@code reRenderizado} é true e o corpo vem da versão ATUAL do template;
+ * {@code templateAlterado} diz se ela difere da versão usada no envio (null = desconhecida,
+ * logs anteriores ao registro da versão).
+ */
+public class EmailBodyResponse {
+
+    private Long id;
+    private String assunto;
+    private String texto;
+    private String html;
+    private String template;
+    private Map<String, String> variaveis;
+    private Map<String, String> anexos;
+    private boolean reRenderizado;
+    private String templateVersao;
+    private String templateVersaoAtual;
+    private Boolean templateAlterado;
+
+    public EmailBodyResponse() {}
+
+    public EmailBodyResponse(Long id, String assunto, String texto, String html, String template,
+                             Map<String, String> variaveis, Map<String, String> anexos) {
+        this.id = id;
+        this.assunto = assunto;
+        this.texto = texto;
+        this.html = html;
+        this.template = template;
+        this.variaveis = variaveis;
+        this.anexos = anexos;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getAssunto() { return assunto; }
+    public void setAssunto(String assunto) { this.assunto = assunto; }
+
+    public String getTexto() { return texto; }
+    public void setTexto(String texto) { this.texto = texto; }
+
+    public String getHtml() { return html; }
+    public void setHtml(String html) { this.html = html; }
+
+    public String getTemplate() { return template; }
+    public void setTemplate(String template) { this.template = template; }
+
+    public Map<String, String> getVariaveis() { return variaveis; }
+    public void setVariaveis(Map<String, String> variaveis) { this.variaveis = variaveis; }
+
+    public Map<String, String> getAnexos() { return anexos; }
+    public void setAnexos(Map<String, String> anexos) { this.anexos = anexos; }
+
+    public boolean isReRenderizado() { return reRenderizado; }
+    public void setReRenderizado(boolean reRenderizado) { this.reRenderizado = reRenderizado; }
+
+    public String getTemplateVersao() { return templateVersao; }
+    public void setTemplateVersao(String templateVersao) { this.templateVersao = templateVersao; }
+
+    public String getTemplateVersaoAtual() { return templateVersaoAtual; }
+    public void setTemplateVersaoAtual(String templateVersaoAtual) { this.templateVersaoAtual = templateVersaoAtual; }
+
+    public Boolean getTemplateAlterado() { return templateAlterado; }
+    public void setTemplateAlterado(Boolean templateAlterado) { this.templateAlterado = templateAlterado; }
+}
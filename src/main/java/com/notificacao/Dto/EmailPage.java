@@ -0,0 +1,25 @@
+package com.notificacao.Dto;
+
+import com.notificacao.repository.EmailLogRepository.ResumoEnvio;
+
+import java.util.List;
+
+/** Página do histórico (GET /api/email); {@code proximoCursor} null = não há mais páginas. */
+public class EmailPage {
+
+    private List<ResumoEnvio> itens;
+    private String proximoCursor;
+
+    public EmailPage() {}
+
+    public EmailPage(List<ResumoEnvio> itens, String proximoCursor) {
+        this.itens = itens;
+        this.proximoCursor = proximoCursor;
+    }
+
+    public List<ResumoEnvio> getItens() { return itens; }
+    public void setItens(List<ResumoEnvio> itens) { this.itens = itens; }
+
+    public String getProximoCursor() { return proximoCursor; }
+    public void setProximoCursor(String proximoCursor) { this.proximoCursor = proximoCursor; }
+}
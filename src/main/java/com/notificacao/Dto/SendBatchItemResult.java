@@ -0,0 +1,39 @@
+package com.notificacao.Dto;
+
+/** Resultado de um item de POST /api/email/send/batch (na mesma ordem da requisição). */
+public class SendBatchItemResult {
+
+    public static final String INVALID   = "INVALID";
+    public static final String DUPLICATE = "DUPLICATE";
+
+    private int indice;
+    private String destinatario;
+    private Long id;
+    private String status;
+    private String erro;
+
+    public SendBatchItemResult() {}
+
+    public SendBatchItemResult(int indice, String destinatario, Long id, String status, String erro) {
+        this.indice = indice;
+        this.destinatario = destinatario;
+        this.id = id;
+        this.status = status;
+        this.erro = erro;
+    }
+
+    public int getIndice() { return indice; }
+    public void setIndice(int indice) { this.indice = indice; }
+
+    public String getDestinatario() { return destinatario; }
+    public void setDestinatario(String destinatario) { this.destinatario = destinatario; }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getErro() { return erro; }
+    public void setErro(String erro) { this.erro = erro; }
+}
@@ -1,7 +1,14 @@
 package com.notificacao.Dto;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.notificacao.model.Prioridade;
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
 
 public class SendEmailRequest {
 
@@ -9,12 +16,31 @@ public class SendEmailRequest {
     @NotBlank
     private String destinatario;
 
-    @NotBlank
+    // assunto + conteudo OU template (+ variaveis); o assunto, se vier, sobrepõe o do template
     private String assunto;
 
-    @NotBlank
     private String conteudo;
 
+    private String template;
+
+    private Map<String, String> variaveis;
+
+    // opcional; sem valor = NORMAL
+    private Prioridade prioridade;
+
+    // opcional; envio agendado, ISO-8601 COM offset (2025-01-31T09:00:00-03:00 ou ...Z);
+    // sem offset o request é recusado. No passado ou ausente = envia já
+    @JsonAlias("sendAt")
+    private OffsetDateTime enviarEm;
+
+    // opcional; categorias com digest configurado são agrupadas por destinatário
+    @Size(max = 50)
+    private String categoria;
+
+    // opcional; nome do arquivo -> id devolvido por POST /api/email/attachments
+    @Size(max = 20)
+    private Map<String, String> anexos;
+
     public String getDestinatario() { return destinatario; }
     public void setDestinatario(String destinatario) { this.destinatario = destinatario; }
 
@@ -23,4 +49,30 @@ public class SendEmailRequest {
 
     public String getConteudo() { return conteudo; }
     public void setConteudo(String conteudo) { this.conteudo = conteudo; }
+
+    public Prioridade getPrioridade() { return prioridade; }
+    public void setPrioridade(Prioridade prioridade) { this.prioridade = prioridade; }
+
+    public String getTemplate() { return template; }
+    public void setTemplate(String template) { this.template = template; }
+
+    public Map<String, String> getVariaveis() { return variaveis; }
+    public void setVariaveis(Map<String, String> variaveis) { this.variaveis = variaveis; }
+
+    public OffsetDateTime getEnviarEm() { return enviarEm; }
+    public void setEnviarEm(OffsetDateTime enviarEm) { this.enviarEm = enviarEm; }
+
+    public String getCategoria() { return categoria; }
+    public void setCategoria(String categoria) { this.categoria = categoria; }
+
+    public Map<String, String> getAnexos() { return anexos; }
+    public void setAnexos(Map<String, String> anexos) { this.anexos = anexos; }
+
+    @AssertTrue(message = "informe assunto e conteudo, ou um template")
+    public boolean isCorpoInformado() {
+        if (template != null && !template.isBlank()) {
+            return true;
+        }
+        return assunto != null && !assunto.isBlank() && conteudo != null && !conteudo.isBlank();
+    }
 }
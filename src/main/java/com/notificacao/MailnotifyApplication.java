@@ -2,8 +2,10 @@ package com.notificacao;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.mail.MailSenderAutoConfiguration;
 
-@SpringBootApplication
+// o envio passa pelos PooledJavaMailSender do MailConfig: sem o JavaMailSenderImpl do auto-config
+@SpringBootApplication(exclude = MailSenderAutoConfiguration.class)
 public class MailnotifyApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,57 @@
+package com.notificacao.config;
+
+import com.notificacao.model.Prioridade;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * High-water marks do controle de admissão, por prioridade.
+ *
+ * <pre>
+ * mailnotify.admission.limits.BULK.queue-high-water=500
+ * mailnotify.admission.limits.BULK.inflight-high-water=3
+ * </pre>
+ *
+ * Valor &lt;= 0 desliga o limite correspondente.
+ */
+@ConfigurationProperties(prefix = "mailnotify.admission")
+public class AdmissionProperties {
+
+    private boolean enabled = true;
+    private long maxRetryAfterSeconds = 60;
+    private Map<Prioridade, Limite> limits = new EnumMap<>(Map.of(
+            Prioridade.CRITICAL, new Limite(0, 0),
+            Prioridade.NORMAL, new Limite(800, 0),
+            Prioridade.BULK, new Limite(500, 0)));
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public long getMaxRetryAfterSeconds() { return maxRetryAfterSeconds; }
+    public void setMaxRetryAfterSeconds(long maxRetryAfterSeconds) { this.maxRetryAfterSeconds = maxRetryAfterSeconds; }
+
+    public Map<Prioridade, Limite> getLimits() { return limits; }
+    public void setLimits(Map<Prioridade, Limite> limits) { this.limits = limits; }
+
+    public static class Limite {
+        // logs aguardando worker na fila da prioridade
+        private int queueHighWater;
+        // envios SMTP em andamento (todas as prioridades)
+        private int inflightHighWater;
+
+        public Limite() {}
+
+        public Limite(int queueHighWater, int inflightHighWater) {
+            this.queueHighWater = queueHighWater;
+            this.inflightHighWater = inflightHighWater;
+        }
+
+        public int getQueueHighWater() { return queueHighWater; }
+        public void setQueueHighWater(int queueHighWater) { this.queueHighWater = queueHighWater; }
+
+        public int getInflightHighWater() { return inflightHighWater; }
+        public void setInflightHighWater(int inflightHighWater) { this.inflightHighWater = inflightHighWater; }
+    }
+}
@@ -0,0 +1,47 @@
+package com.notificacao.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Categorias cujos e-mails para o mesmo destinatário são agrupados num digest.
+ *
+ * <pre>
+ * mailnotify.digest.categories[comentario].window-ms=60000
+ * mailnotify.digest.categories[comentario].max-items=20
+ * mailnotify.digest.categories[comentario].subject=Novos comentários
+ * </pre>
+ *
+ * Categoria ausente do mapa (ou sem categoria) = envio imediato, como antes.
+ */
+@ConfigurationProperties(prefix = "mailnotify.digest")
+public class DigestProperties {
+
+    private long pollMs = 1000;
+    // chave = categoria informada no envio
+    private Map<String, Janela> categories = new HashMap<>();
+
+    public long getPollMs() { return pollMs; }
+    public void setPollMs(long pollMs) { this.pollMs = pollMs; }
+
+    public Map<String, Janela> getCategories() { return categories; }
+    public void setCategories(Map<String, Janela> categories) { this.categories = categories; }
+
+    public static class Janela {
+        private long windowMs = 60000;
+        private int maxItems = 20;
+        // assunto do digest; o total de itens é acrescentado entre parênteses
+        private String subject;
+
+        public long getWindowMs() { return windowMs; }
+        public void setWindowMs(long windowMs) { this.windowMs = windowMs; }
+
+        public int getMaxItems() { return maxItems; }
+        public void setMaxItems(int maxItems) { this.maxItems = maxItems; }
+
+        public String getSubject() { return subject; }
+        public void setSubject(String subject) { this.subject = subject; }
+    }
+}
@@ -0,0 +1,12 @@
+package com.notificacao.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Habilita o @Scheduled usado pelo EmailDispatcher para drenar a fila (outbox)
+@Configuration
+@EnableScheduling
+@EnableConfigurationProperties({RateLimitProperties.class, SmtpRelayProperties.class, DigestProperties.class,
+        AdmissionProperties.class})
+public class DispatchConfig {}
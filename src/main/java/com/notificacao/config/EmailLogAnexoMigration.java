@@ -0,0 +1,93 @@
+package com.notificacao.config;
+
+import com.notificacao.model.EmailStatus;
+import com.notificacao.model.MapJsonConverter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Preenche email_log_anexo para os envios pendentes gravados antes da tabela existir:
+ * o GC de anexos só olha a tabela, então um anexo citado só no JSON de email_log.anexos
+ * seria apagado antes do envio.
+ *
+ * Só os status ainda por enviar (PENDING/RETRYING/SENDING) importam para o GC. Idempotente:
+ * logs que já têm linhas em email_log_anexo são pulados; roda em lotes, cada um no seu autocommit.
+ */
+@Component
+public class EmailLogAnexoMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailLogAnexoMigration.class);
+
+    private static final MapJsonConverter JSON = new MapJsonConverter();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean habilitada;
+    private final int lote;
+
+    // depende do EntityManagerFactory só para rodar depois do schema update, e da migração
+    // de status porque o filtro usa os códigos numéricos
+    public EmailLogAnexoMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                                  EmailLogStatusMigration statusMigration,
+                                  @Value("${mailnotify.storage.migrate-attachment-refs:true}") boolean habilitada,
+                                  @Value("${mailnotify.storage.migrate-batch-size:10000}") int lote) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.habilitada = habilitada;
+        this.lote = lote;
+    }
+
+    @PostConstruct
+    void migrar() {
+        if (!habilitada) {
+            return;
+        }
+        String ativos = Stream.of(EmailStatus.PENDING, EmailStatus.RETRYING, EmailStatus.SENDING)
+                .map(s -> String.valueOf(s.getCodigo()))
+                .collect(Collectors.joining(","));
+        String sql = "select e.id, e.anexos from email_log e where e.status in (" + ativos + ") "
+                   + "and e.anexos is not null and e.id > ? "
+                   + "and not exists (select 1 from email_log_anexo x where x.log_id = e.id) "
+                   + "order by e.id limit " + lote;
+        try {
+            long ultimo = 0;
+            long total = 0;
+            List<Map<String, Object>> linhas;
+            do {
+                linhas = jdbcTemplate.queryForList(sql, ultimo);
+                List<Object[]> referencias = new ArrayList<>();
+                for (Map<String, Object> linha : linhas) {
+                    ultimo = ((Number) linha.get("id")).longValue();
+                    Object json = linha.get("anexos");
+                    Map<String, String> anexos = JSON.convertToEntityAttribute(json != null ? json.toString() : null);
+                    if (anexos != null) {
+                        for (String id : Set.copyOf(anexos.values())) {
+                            referencias.add(new Object[]{ultimo, id});
+                        }
+                    }
+                }
+                if (!referencias.isEmpty()) {
+                    jdbcTemplate.batchUpdate("insert ignore into email_log_anexo (log_id, anexo_id) values (?, ?)", referencias);
+                    total += referencias.size();
+                }
+            } while (linhas.size() == lote);
+            if (total > 0) {
+                log.info("{} referências de anexos copiadas para email_log_anexo.", total);
+            }
+        } catch (DataAccessException ex) {
+            log.warn("Migração de email_log_anexo não aplicada: {}", ex.getMessage());
+        }
+    }
+}
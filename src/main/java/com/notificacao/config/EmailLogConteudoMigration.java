@@ -0,0 +1,58 @@
+package com.notificacao.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Migração de email_log.conteudo de LONGTEXT para LONGBLOB (corpo comprimido): o
+ * ddl-auto=update não altera o tipo de coluna existente. O MODIFY preserva os bytes
+ * UTF-8 das linhas antigas, que continuam legíveis como texto puro pelo converter.
+ *
+ * Em tabela grande o ALTER copia a tabela; para rodar fora da subida (pt-online-schema-change,
+ * janela de manutenção), desligue com mailnotify.storage.migrate-column=false.
+ */
+@Component
+public class EmailLogConteudoMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailLogConteudoMigration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean habilitada;
+
+    // depende do EntityManagerFactory só para rodar depois do schema update
+    public EmailLogConteudoMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                                     @Value("${mailnotify.storage.migrate-column:true}") boolean habilitada) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.habilitada = habilitada;
+    }
+
+    @PostConstruct
+    void migrar() {
+        if (!habilitada) {
+            return;
+        }
+        try {
+            List<String> tipos = jdbcTemplate.queryForList(
+                    "select data_type from information_schema.columns "
+                  + "where table_schema = database() and table_name = 'email_log' and column_name = 'conteudo'",
+                    String.class);
+            if (tipos.isEmpty() || tipos.get(0).toLowerCase().endsWith("blob")) {
+                return;
+            }
+            log.info("Convertendo email_log.conteudo de {} para LONGBLOB...", tipos.get(0));
+            jdbcTemplate.execute("alter table email_log modify conteudo longblob");
+            log.info("email_log.conteudo convertida para LONGBLOB.");
+        } catch (DataAccessException ex) {
+            // outra instância migrando ao mesmo tempo, ou banco sem information_schema
+            log.warn("Migração de email_log.conteudo não aplicada: {}", ex.getMessage());
+        }
+    }
+}
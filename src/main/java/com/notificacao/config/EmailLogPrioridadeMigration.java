@@ -0,0 +1,78 @@
+package com.notificacao.config;
+
+import com.notificacao.model.EmailStatus;
+import com.notificacao.model.Prioridade;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Preenche email_log.prioridade (NORMAL) e email_log.proxima_tentativa (data_hora) nas
+ * linhas antigas que não as têm, para o claim da outbox filtrar por igualdade e range no
+ * índice (status, prioridade, proximaTentativa) — sem OR ... IS NULL, que faria o
+ * FOR UPDATE SKIP LOCKED examinar e travar linhas de outras filas.
+ *
+ * Em faixas de id, cada uma no seu autocommit, como {@link EmailLogStatusMigration}.
+ * Idempotente: linhas já preenchidas não são tocadas. Só PENDING/RETRYING precisam da data.
+ */
+@Component
+public class EmailLogPrioridadeMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailLogPrioridadeMigration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean habilitada;
+    private final int faixa;
+
+    // depende do EntityManagerFactory só para rodar depois do schema update, e da migração
+    // de status porque o filtro usa os códigos numéricos
+    public EmailLogPrioridadeMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                                       EmailLogStatusMigration statusMigration,
+                                       @Value("${mailnotify.storage.migrate-priority:true}") boolean habilitada,
+                                       @Value("${mailnotify.storage.migrate-batch-size:10000}") int faixa) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.habilitada = habilitada;
+        this.faixa = faixa;
+    }
+
+    @PostConstruct
+    void migrar() {
+        if (!habilitada) {
+            return;
+        }
+        try {
+            Integer pendentes = jdbcTemplate.queryForObject(
+                    "select count(*) from (select 1 from email_log where prioridade is null or (proxima_tentativa is null "
+                  + "and status in (" + EmailStatus.PENDING.getCodigo() + "," + EmailStatus.RETRYING.getCodigo() + ")) "
+                  + "limit 1) x", Integer.class);
+            if (pendentes == null || pendentes == 0) {
+                return;
+            }
+            Long min = jdbcTemplate.queryForObject("select min(id) from email_log", Long.class);
+            Long max = jdbcTemplate.queryForObject("select max(id) from email_log", Long.class);
+            if (min == null) {
+                return;
+            }
+            log.info("Preenchendo prioridade/próxima tentativa em email_log (ids {} a {})...", min, max);
+            String prioridade = "update email_log set prioridade = '" + Prioridade.NORMAL.name() + "' "
+                              + "where id >= ? and id < ? and prioridade is null";
+            String proxima = "update email_log set proxima_tentativa = coalesce(data_hora, now()) "
+                           + "where id >= ? and id < ? and proxima_tentativa is null and status in ("
+                           + EmailStatus.PENDING.getCodigo() + "," + EmailStatus.RETRYING.getCodigo() + ")";
+            long atualizadas = 0;
+            for (long inicio = min; inicio <= max; inicio += faixa) {
+                atualizadas += jdbcTemplate.update(prioridade, inicio, inicio + faixa);
+                atualizadas += jdbcTemplate.update(proxima, inicio, inicio + faixa);
+            }
+            log.info("{} atualizações em email_log (prioridade/próxima tentativa).", atualizadas);
+        } catch (DataAccessException ex) {
+            log.warn("Migração de email_log.prioridade não aplicada: {}", ex.getMessage());
+        }
+    }
+}
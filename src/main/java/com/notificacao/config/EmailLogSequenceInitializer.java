@@ -0,0 +1,46 @@
+package com.notificacao.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Migração do id de EmailLog de IDENTITY para SEQUENCE: a tabela email_log_seq
+ * (criada pelo ddl-auto) nasce em 1, o que colidiria com os ids já existentes.
+ * Na subida, avança a sequência para depois do maior id gravado — idempotente
+ * e seguro com várias instâncias subindo ao mesmo tempo.
+ */
+@Component
+public class EmailLogSequenceInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailLogSequenceInitializer.class);
+
+    // folga de um bloco inteiro (allocationSize = 50) para o otimizador pooled do Hibernate
+    private static final int FOLGA = 51;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // depende do EntityManagerFactory só para rodar depois do schema update
+    public EmailLogSequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    void alinhar() {
+        try {
+            int linhas = jdbcTemplate.update(
+                    "update email_log_seq set next_val = (select coalesce(max(id), 0) + ? from email_log) "
+                  + "where next_val < (select coalesce(max(id), 0) + ? from email_log)", FOLGA, FOLGA);
+            if (linhas > 0) {
+                log.info("email_log_seq avançada para depois do maior id de email_log.");
+            }
+        } catch (DataAccessException ex) {
+            // banco sem a tabela emulada (ex.: dialeto com sequence nativa) — nada a fazer
+            log.debug("Alinhamento de email_log_seq ignorado: {}", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.notificacao.config;
+
+import com.notificacao.model.EmailStatus;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Migração de email_log.status de VARCHAR (nome do status) para TINYINT (código do
+ * {@link EmailStatus}); o ddl-auto=update não altera o tipo de coluna existente.
+ *
+ * 1. reescreve o nome como o código ('PENDING' -> '0'), em faixas de id, cada uma no
+ *    seu autocommit — sem uma transação gigante nem lock na tabela inteira;
+ * 2. MODIFY para TINYINT: o MySQL converte '0'..'6' e mantém os índices que usam a coluna.
+ *
+ * Idempotente: linhas já convertidas são puladas e a coluna já numérica não é tocada.
+ * Status desconhecido (sujeira antiga) vira FAILED. O passo 2 copia a tabela; em tabelas
+ * grandes rode-o por fora (pt-online-schema-change / gh-ost) com
+ * mailnotify.storage.migrate-status=false.
+ */
+@Component
+public class EmailLogStatusMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailLogStatusMigration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean habilitada;
+    private final int faixa;
+
+    // depende do EntityManagerFactory só para rodar depois do schema update
+    public EmailLogStatusMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                                   @Value("${mailnotify.storage.migrate-status:true}") boolean habilitada,
+                                   @Value("${mailnotify.storage.migrate-batch-size:10000}") int faixa) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.habilitada = habilitada;
+        this.faixa = faixa;
+    }
+
+    @PostConstruct
+    void migrar() {
+        if (!habilitada) {
+            return;
+        }
+        try {
+            if (!textual()) {
+                return;
+            }
+            Long min = jdbcTemplate.queryForObject("select min(id) from email_log", Long.class);
+            Long max = jdbcTemplate.queryForObject("select max(id) from email_log", Long.class);
+            if (min != null) {
+                log.info("Convertendo email_log.status para códigos (ids {} a {})...", min, max);
+                String sql = "update email_log set status = " + casoNomeParaCodigo()
+                           + " where id >= ? and id < ? and status is not null and status not in (" + codigos() + ")";
+                long convertidas = 0;
+                for (long inicio = min; inicio <= max; inicio += faixa) {
+                    convertidas += jdbcTemplate.update(sql, inicio, inicio + faixa);
+                }
+                log.info("{} linhas de email_log.status convertidas.", convertidas);
+            }
+            // outra instância pode ter terminado enquanto esta convertia as linhas
+            if (textual()) {
+                jdbcTemplate.execute("alter table email_log modify status tinyint");
+                log.info("email_log.status convertida para TINYINT.");
+            }
+        } catch (DataAccessException ex) {
+            log.warn("Migração de email_log.status não aplicada: {}", ex.getMessage());
+        }
+    }
+
+    private boolean textual() {
+        List<String> tipos = jdbcTemplate.queryForList(
+                "select data_type from information_schema.columns "
+              + "where table_schema = database() and table_name = 'email_log' and column_name = 'status'",
+                String.class);
+        if (tipos.isEmpty()) {
+            return false;
+        }
+        String tipo = tipos.get(0).toLowerCase(Locale.ROOT);
+        return tipo.contains("char") || tipo.contains("text");
+    }
+
+    // case upper(trim(status)) when 'PENDING' then '0' ... else '<FAILED>' end
+    private static String casoNomeParaCodigo() {
+        String quandos = Stream.of(EmailStatus.values())
+                .map(s -> "when '" + s.name() + "' then '" + s.getCodigo() + "'")
+                .collect(Collectors.joining(" "));
+        return "case upper(trim(status)) " + quandos + " else '" + EmailStatus.FAILED.getCodigo() + "' end";
+    }
+
+    private static String codigos() {
+        return Stream.of(EmailStatus.values())
+                .map(s -> "'" + s.getCodigo() + "'")
+                .collect(Collectors.joining(","));
+    }
+}
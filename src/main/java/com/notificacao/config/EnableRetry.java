@@ -1,15 +0,0 @@
-package com.notificacao.config;
-
-import java.lang.annotation.Documented;
-import java.lang.annotation.Retention;
-import java.lang.annotation.Target;
-
-import static java.lang.annotation.ElementType.TYPE;
-import static java.lang.annotation.RetentionPolicy.RUNTIME;
-
-@Documented
-@Target(TYPE)
-@Retention(RUNTIME)
-@org.springframework.retry.annotation.EnableRetry
-public @interface EnableRetry {
-}
@@ -0,0 +1,82 @@
+package com.notificacao.config;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+
+/**
+ * MimeMessage que pode reaproveitar um corpo já codificado.
+ *
+ * Sem corpo compartilhado se comporta como uma MimeMessage comum. Com
+ * {@link #setCorpoCompartilhado(byte[])}, os bytes recebidos (cabeçalhos comuns +
+ * linha em branco + corpo com transfer encoding aplicado) são escritos como estão
+ * no transport; só os cabeçalhos desta cópia (To, Date, Message-ID) são gerados.
+ * O array é compartilhado entre as cópias e nunca alterado. Com
+ * {@link #setCorpoCompartilhado(Path)} os mesmos bytes vêm de um arquivo, copiado em
+ * blocos para o transport (corpos com anexos não passam inteiros pelo heap).
+ */
+public class FanoutMimeMessage extends MimeMessage {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private byte[] corpoCompartilhado;
+    private Path arquivoCompartilhado;
+
+    public FanoutMimeMessage(Session session) {
+        super(session);
+    }
+
+    public void setCorpoCompartilhado(byte[] corpoCompartilhado) {
+        this.corpoCompartilhado = corpoCompartilhado;
+    }
+
+    public void setCorpoCompartilhado(Path arquivoCompartilhado) {
+        this.arquivoCompartilhado = arquivoCompartilhado;
+    }
+
+    public boolean isCompartilhado() {
+        return corpoCompartilhado != null || arquivoCompartilhado != null;
+    }
+
+    @Override
+    protected void updateHeaders() throws MessagingException {
+        if (!isCompartilhado()) {
+            super.updateHeaders();
+            return;
+        }
+        // MIME-Version, Content-Type e Content-Transfer-Encoding já estão nos bytes compartilhados
+        if (getHeader("Message-ID") == null) {
+            updateMessageID();
+        }
+    }
+
+    @Override
+    public void writeTo(OutputStream os, String[] ignoreList) throws IOException, MessagingException {
+        if (!isCompartilhado()) {
+            super.writeTo(os, ignoreList);
+            return;
+        }
+        if (!saved) {
+            saveChanges();
+        }
+        Enumeration<String> linhas = getNonMatchingHeaderLines(ignoreList);
+        while (linhas.hasMoreElements()) {
+            // cabeçalhos já vêm codificados (RFC 2047) pelos setters; são ASCII
+            os.write(linhas.nextElement().getBytes(StandardCharsets.US_ASCII));
+            os.write(CRLF);
+        }
+        if (corpoCompartilhado != null) {
+            os.write(corpoCompartilhado);
+        } else {
+            Files.copy(arquivoCompartilhado, os);
+        }
+        os.flush();
+    }
+}
@@ -0,0 +1,122 @@
+package com.notificacao.config;
+
+import com.notificacao.service.RelayRouter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// Um PooledJavaMailSender por relay (em vez do JavaMailSenderImpl do auto-config,
+// que abre uma conexão por envio e fica excluído em MailnotifyApplication), atrás do RelayRouter
+@Configuration
+@EnableConfigurationProperties(MailProperties.class)
+public class MailConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(MailConfig.class);
+
+    @Value("${mailnotify.smtp.pool.max-connections:4}")
+    private int maxConexoes;
+
+    @Value("${mailnotify.smtp.pool.critical-reserved-connections:1}")
+    private int reservadasCriticas;
+
+    @Value("${mailnotify.smtp.pool.max-messages-per-connection:100}")
+    private int maxMensagens;
+
+    @Value("${mailnotify.smtp.pool.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${mailnotify.smtp.pool.validate-after-ms:5000}")
+    private long validarAposMs;
+
+    @Value("${mailnotify.smtp.pool.borrow-timeout-ms:30000}")
+    private long borrowTimeoutMs;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean threadsVirtuais;
+
+    @Bean
+    public RelayRouter relayRouter(MailProperties mail, SmtpRelayProperties smtp, MeterRegistry registry) {
+        Map<PooledJavaMailSender, Integer> pesos = new LinkedHashMap<>();
+        if (smtp.getRelays().isEmpty()) {
+            // sem relays nomeados: um único relay a partir de spring.mail.*
+            PooledJavaMailSender sender = novoSender("default", registry);
+            aplicar(sender, mail);
+            pesos.put(sender, 1);
+        } else {
+            for (SmtpRelayProperties.Relay relay : smtp.getRelays()) {
+                PooledJavaMailSender sender = novoSender(relay.getName(), registry);
+                aplicar(sender, relay);
+                pesos.put(sender, relay.getWeight());
+            }
+        }
+        conferirCarriers(pesos.size());
+        return new RelayRouter(pesos, smtp.getEjectAfterFailures(), smtp.getEjectMs(), registry);
+    }
+
+    // Com virtual threads, cada conexão em uso prende uma carrier (synchronized do SMTPTransport,
+    // ver PooledJavaMailSender): se todas as carriers ficarem presas, nenhuma outra virtual thread roda
+    private void conferirCarriers(int relays) {
+        if (!threadsVirtuais) {
+            return;
+        }
+        int carriers = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors());
+        int presas = relays * (maxConexoes + reservadasCriticas);
+        if (presas >= carriers) {
+            log.warn("Até {} conexões SMTP ({} relay(s) x (max-connections {} + critical-reserved-connections {})) "
+                            + "podem prender todas as {} carrier threads das virtual threads. Reduza o pool ou aumente "
+                            + "-Djdk.virtualThreadScheduler.parallelism.",
+                    presas, relays, maxConexoes, reservadasCriticas, carriers);
+        }
+    }
+
+    private PooledJavaMailSender novoSender(String relay, MeterRegistry registry) {
+        return new PooledJavaMailSender(
+                relay, maxConexoes, reservadasCriticas, maxMensagens, idleTimeoutMs, validarAposMs, borrowTimeoutMs, registry);
+    }
+
+    /** Copia as configurações spring.mail.* para o sender (mesmo mapeamento do auto-config do Boot). */
+    static void aplicar(JavaMailSenderImpl sender, MailProperties mail) {
+        sender.setHost(mail.getHost());
+        if (mail.getPort() != null) {
+            sender.setPort(mail.getPort());
+        }
+        sender.setUsername(mail.getUsername());
+        sender.setPassword(mail.getPassword());
+        sender.setProtocol(mail.getProtocol());
+        if (mail.getDefaultEncoding() != null) {
+            sender.setDefaultEncoding(mail.getDefaultEncoding().name());
+        }
+        if (!mail.getProperties().isEmpty()) {
+            Properties props = new Properties();
+            props.putAll(mail.getProperties());
+            sender.setJavaMailProperties(props);
+        }
+    }
+
+    static void aplicar(JavaMailSenderImpl sender, SmtpRelayProperties.Relay relay) {
+        sender.setHost(relay.getHost());
+        if (relay.getPort() != null) {
+            sender.setPort(relay.getPort());
+        }
+        sender.setUsername(relay.getUsername());
+        sender.setPassword(relay.getPassword());
+        sender.setProtocol(relay.getProtocol());
+        if (!relay.getProperties().isEmpty()) {
+            Properties props = new Properties();
+            props.putAll(relay.getProperties());
+            sender.setJavaMailProperties(props);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.notificacao.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JavaMailSender que reaproveita sessões SMTP já autenticadas (TCP + STARTTLS + AUTH)
+ * em vez de abrir uma conexão nova por mensagem.
+ *
+ * - no máximo {@code maxConexoes} transports por relay (ociosos + em uso), mais
+ *   {@code reservadasCriticas} que só envios CRITICAL usam: um reset de senha não
+ *   espera o bulk devolver conexão (ver {@link #send(MimeMessagePreparator, boolean)});
+ * - conexões ociosas há mais de {@code validarAposMs} são validadas com NOOP antes do uso;
+ * - conexões ociosas há mais de {@code idleTimeoutMs} são fechadas;
+ * - cada conexão é reciclada após {@code maxMensagensPorConexao} envios.
+ *
+ * Virtual threads: o SMTPTransport do Jakarta Mail usa métodos synchronized
+ * (sendMessage, isConnected), que prendem a carrier thread durante o I/O. Por
+ * isso o semáforo é adquirido FORA de qualquer bloco synchronized — no máximo
+ * {@code maxConexoes + reservadasCriticas} carriers ficam presas ao mesmo tempo; os
+ * demais envios esperam estacionados no semáforo sem ocupar thread de plataforma.
+ * Mantenha max-connections + critical-reserved-connections (somadas entre os relays) abaixo
+ * de jdk.virtualThreadScheduler.parallelism — o MailConfig avisa na subida se não estiver.
+ */
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledJavaMailSender.class);
+
+    private final String relay;
+    private final int maxMensagensPorConexao;
+    private final long idleTimeoutMs;
+    private final long validarAposMs;
+    private final long borrowTimeoutMs;
+
+    // LIFO: as conexões mais quentes ficam na frente; as frias envelhecem no fim
+    private final LinkedBlockingDeque<Conexao> ociosas = new LinkedBlockingDeque<>();
+    // uma permissão por conexão em uso; as reservadas só atendem CRITICAL
+    private final Semaphore vagas;
+    private final Semaphore vagasCriticas;
+
+    // envio CRITICAL em andamento nesta thread (send(preparator, true))
+    private static final ThreadLocal<Boolean> CRITICO = ThreadLocal.withInitial(() -> false);
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer connectTimer;
+
+    public PooledJavaMailSender(String relay, int maxConexoes, int reservadasCriticas, int maxMensagensPorConexao,
+                                long idleTimeoutMs, long validarAposMs, long borrowTimeoutMs,
+                                MeterRegistry registry) {
+        this.relay = relay;
+        this.maxMensagensPorConexao = maxMensagensPorConexao;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.validarAposMs = validarAposMs;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.vagas = new Semaphore(maxConexoes, true);
+        this.vagasCriticas = new Semaphore(Math.max(0, reservadasCriticas), true);
+        int reservadas = vagasCriticas.availablePermits();
+
+        this.hits = Counter.builder("mailnotify.smtp.pool.borrow")
+                .tag("relay", relay).tag("result", "hit").register(registry);
+        this.misses = Counter.builder("mailnotify.smtp.pool.borrow")
+                .tag("relay", relay).tag("result", "miss").register(registry);
+        this.connectTimer = Timer.builder("mailnotify.smtp.connect")
+                .description("Tempo para abrir e autenticar uma sessão SMTP")
+                .tag("relay", relay).register(registry);
+        Gauge.builder("mailnotify.smtp.pool.idle", ociosas, LinkedBlockingDeque::size)
+                .tag("relay", relay).register(registry);
+        Gauge.builder("mailnotify.smtp.pool.active", this,
+                        p -> maxConexoes - p.vagas.availablePermits() + reservadas - p.vagasCriticas.availablePermits())
+                .tag("relay", relay).register(registry);
+    }
+
+    public String getRelay() {
+        return relay;
+    }
+
+    /** Igual a {@link #send(MimeMessagePreparator)}; {@code critico} libera as conexões reservadas. */
+    public void send(MimeMessagePreparator preparator, boolean critico) throws MailException {
+        CRITICO.set(critico);
+        try {
+            send(preparator);
+        } finally {
+            CRITICO.remove();
+        }
+    }
+
+    /** Permite ao preparator usar um corpo já codificado (fan-out); sem ele, é uma MimeMessage comum. */
+    @Override
+    public MimeMessage createMimeMessage() {
+        return new FanoutMimeMessage(getSession());
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) throws MailException {
+        Map<Object, Exception> falhas = new LinkedHashMap<>();
+        Conexao conexao = null;
+
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                Object original = (originalMessages != null ? originalMessages[i] : mimeMessages[i]);
+
+                if (conexao == null) {
+                    try {
+                        conexao = emprestar();
+                    } catch (AuthenticationFailedException ex) {
+                        throw new MailAuthenticationException(ex);
+                    } catch (Exception ex) {
+                        // sem conexão: esta e as demais mensagens falham
+                        for (int j = i; j < mimeMessages.length; j++) {
+                            falhas.put(originalMessages != null ? originalMessages[j] : mimeMessages[j], ex);
+                        }
+                        throw new MailSendException("Mail server connection failed", ex, falhas);
+                    }
+                }
+
+                MimeMessage mimeMessage = mimeMessages[i];
+                try {
+                    if (mimeMessage.getSentDate() == null) {
+                        mimeMessage.setSentDate(new Date());
+                    }
+                    String messageId = mimeMessage.getMessageID();
+                    mimeMessage.saveChanges();
+                    if (messageId != null) {
+                        // preserva um Message-ID definido explicitamente
+                        mimeMessage.setHeader("Message-ID", messageId);
+                    }
+                    Address[] addresses = mimeMessage.getAllRecipients();
+                    conexao.transport.sendMessage(mimeMessage, (addresses != null ? addresses : new Address[0]));
+                    conexao.enviadas++;
+                } catch (Exception ex) {
+                    falhas.put(original, ex);
+                    // se a sessão caiu, descarta e pega outra para as próximas mensagens
+                    if (!conexao.transport.isConnected()) {
+                        devolver(conexao, false);
+                        conexao = null;
+                    }
+                }
+            }
+        } finally {
+            if (conexao != null) {
+                devolver(conexao, true);
+            }
+        }
+
+        if (!falhas.isEmpty()) {
+            throw new MailSendException(falhas);
+        }
+    }
+
+    private Conexao emprestar() throws MessagingException {
+        // CRITICAL tenta primeiro uma vaga reservada (sem espera); senão disputa as comuns
+        Semaphore vaga = CRITICO.get() && vagasCriticas.tryAcquire() ? vagasCriticas : vagas;
+        try {
+            if (vaga == vagas && !vagas.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new PoolEsgotadoException(relay);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrompido aguardando conexão SMTP", ex);
+        }
+
+        try {
+            Conexao conexao;
+            while ((conexao = ociosas.pollFirst()) != null) {
+                if (valida(conexao)) {
+                    hits.increment();
+                    conexao.vaga = vaga;
+                    return conexao;
+                }
+                fechar(conexao);
+            }
+            misses.increment();
+            conexao = abrir();
+            conexao.vaga = vaga;
+            return conexao;
+        } catch (MessagingException | RuntimeException ex) {
+            vaga.release();
+            throw ex;
+        }
+    }
+
+    private void devolver(Conexao conexao, boolean reutilizavel) {
+        Semaphore vaga = conexao.vaga;
+        conexao.vaga = null;
+        try {
+            if (reutilizavel && conexao.enviadas < maxMensagensPorConexao) {
+                conexao.ultimoUso = System.currentTimeMillis();
+                ociosas.offerFirst(conexao);
+            } else {
+                fechar(conexao);
+            }
+        } finally {
+            vaga.release();
+        }
+    }
+
+    private boolean valida(Conexao conexao) {
+        long ociosa = System.currentTimeMillis() - conexao.ultimoUso;
+        if (ociosa > idleTimeoutMs) {
+            return false;
+        }
+        // isConnected() no SMTPTransport envia NOOP ao servidor
+        return ociosa <= validarAposMs || conexao.transport.isConnected();
+    }
+
+    private Conexao abrir() throws MessagingException {
+        long inicio = System.nanoTime();
+        Transport transport = connectTransport();
+        connectTimer.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        return new Conexao(transport);
+    }
+
+    private void fechar(Conexao conexao) {
+        try {
+            conexao.transport.close();
+        } catch (MessagingException ex) {
+            log.debug("Falha ao fechar conexão SMTP do relay {}", relay, ex);
+        }
+    }
+
+    /** Fecha as conexões ociosas que passaram do idle timeout (agendado pelo RelayRouter). */
+    public void evictIdle() {
+        long agora = System.currentTimeMillis();
+        Iterator<Conexao> it = ociosas.descendingIterator();
+        while (it.hasNext()) {
+            Conexao conexao = it.next();
+            if (agora - conexao.ultimoUso > idleTimeoutMs && ociosas.remove(conexao)) {
+                fechar(conexao);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        Conexao conexao;
+        while ((conexao = ociosas.pollFirst()) != null) {
+            fechar(conexao);
+        }
+    }
+
+    /** Nenhuma conexão livre dentro do borrow timeout: falta de capacidade local, não falha do relay. */
+    public static final class PoolEsgotadoException extends MessagingException {
+        PoolEsgotadoException(String relay) {
+            super("Pool SMTP esgotado para o relay " + relay);
+        }
+    }
+
+    private static final class Conexao {
+        final Transport transport;
+        int enviadas;
+        long ultimoUso = System.currentTimeMillis();
+        // semáforo do empréstimo atual (comum ou reservado), devolvido junto com a conexão
+        Semaphore vaga;
+
+        Conexao(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.notificacao.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limites de envio (token bucket) aplicados antes do mailSender.send.
+ *
+ * <pre>
+ * mailnotify.rate-limit.global.per-second=50
+ * mailnotify.rate-limit.default-domain.per-second=10
+ * mailnotify.rate-limit.domains[gmail.com].per-second=5
+ * mailnotify.rate-limit.domains[gmail.com].burst=10
+ * </pre>
+ *
+ * per-second &lt;= 0 desliga o limite correspondente. {@code critical-reserved-share} é a fração
+ * da rajada de cada bucket que só envios CRITICAL podem usar.
+ */
+@ConfigurationProperties(prefix = "mailnotify.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+    private Limite global = new Limite(50, 100);
+    private Limite defaultDomain = new Limite(10, 20);
+    // chave = domínio do destinatário (minúsculo)
+    private Map<String, Limite> domains = new HashMap<>();
+    private double criticalReservedShare = 0.2;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public Limite getGlobal() { return global; }
+    public void setGlobal(Limite global) { this.global = global; }
+
+    public Limite getDefaultDomain() { return defaultDomain; }
+    public void setDefaultDomain(Limite defaultDomain) { this.defaultDomain = defaultDomain; }
+
+    public Map<String, Limite> getDomains() { return domains; }
+    public void setDomains(Map<String, Limite> domains) { this.domains = domains; }
+
+    public double getCriticalReservedShare() { return criticalReservedShare; }
+    public void setCriticalReservedShare(double criticalReservedShare) { this.criticalReservedShare = criticalReservedShare; }
+
+    public static class Limite {
+        private double perSecond;
+        private int burst = 1;
+
+        public Limite() {}
+
+        public Limite(double perSecond, int burst) {
+            this.perSecond = perSecond;
+            this.burst = burst;
+        }
+
+        public double getPerSecond() { return perSecond; }
+        public void setPerSecond(double perSecond) { this.perSecond = perSecond; }
+
+        public int getBurst() { return burst; }
+        public void setBurst(int burst) { this.burst = burst; }
+    }
+}
@@ -2,6 +2,7 @@ package com.notificacao.config;
 
 import java.util.List;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -64,8 +65,10 @@ public class SecurityConfig {
                 // públicos
                 .requestMatchers("/api/auth/**", "/actuator/**").permitAll()
                 .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
+                // fim de resposta em streaming (export): o request original já foi autorizado
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 // autenticados
-                .requestMatchers(HttpMethod.POST, "/api/email/send", "/api/email/reset-senha").authenticated()
+                .requestMatchers(HttpMethod.POST, "/api/email/send", "/api/email/send/batch", "/api/email/reset-senha", "/api/email/attachments").authenticated()
                 // admin
                 .requestMatchers("/api/email/**").hasRole("ADMIN")
                 // demais
@@ -0,0 +1,26 @@
+package com.notificacao.config;
+
+import com.notificacao.service.SmtpCircuitBreaker;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// GET /actuator/smtpcircuit → estado do circuit breaker do envio SMTP
+@Component
+@Endpoint(id = "smtpcircuit")
+public class SmtpCircuitBreakerEndpoint {
+
+    private final SmtpCircuitBreaker circuitBreaker;
+
+    public SmtpCircuitBreakerEndpoint(SmtpCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @ReadOperation
+    public Map<String, Object> estado() {
+        return circuitBreaker.snapshot();
+    }
+}
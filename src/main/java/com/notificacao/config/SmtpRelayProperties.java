@@ -0,0 +1,74 @@
+package com.notificacao.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Relays SMTP nomeados. Sem nenhum relay configurado, usa um único relay
+ * "default" montado a partir de spring.mail.*.
+ *
+ * <pre>
+ * mailnotify.smtp.relays[0].name=primario
+ * mailnotify.smtp.relays[0].host=smtp.gmail.com
+ * mailnotify.smtp.relays[0].port=587
+ * mailnotify.smtp.relays[0].weight=3
+ * mailnotify.smtp.relays[0].properties.mail.smtp.starttls.enable=true
+ * </pre>
+ */
+@ConfigurationProperties(prefix = "mailnotify.smtp")
+public class SmtpRelayProperties {
+
+    private List<Relay> relays = new ArrayList<>();
+    // falhas seguidas até tirar o relay do roteamento
+    private int ejectAfterFailures = 3;
+    // tempo fora do roteamento antes da primeira sondagem
+    private long ejectMs = 30000;
+
+    public List<Relay> getRelays() { return relays; }
+    public void setRelays(List<Relay> relays) { this.relays = relays; }
+
+    public int getEjectAfterFailures() { return ejectAfterFailures; }
+    public void setEjectAfterFailures(int ejectAfterFailures) { this.ejectAfterFailures = ejectAfterFailures; }
+
+    public long getEjectMs() { return ejectMs; }
+    public void setEjectMs(long ejectMs) { this.ejectMs = ejectMs; }
+
+    public static class Relay {
+        private String name;
+        private String host;
+        private Integer port;
+        private String username;
+        private String password;
+        private String protocol = "smtp";
+        private int weight = 1;
+        private Map<String, String> properties = new HashMap<>();
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getHost() { return host; }
+        public void setHost(String host) { this.host = host; }
+
+        public Integer getPort() { return port; }
+        public void setPort(Integer port) { this.port = port; }
+
+        public String getUsername() { return username; }
+        public void setUsername(String username) { this.username = username; }
+
+        public String getPassword() { return password; }
+        public void setPassword(String password) { this.password = password; }
+
+        public String getProtocol() { return protocol; }
+        public void setProtocol(String protocol) { this.protocol = protocol; }
+
+        public int getWeight() { return weight; }
+        public void setWeight(int weight) { this.weight = weight; }
+
+        public Map<String, String> getProperties() { return properties; }
+        public void setProperties(Map<String, String> properties) { this.properties = properties; }
+    }
+}
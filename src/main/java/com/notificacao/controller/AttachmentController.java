@@ -0,0 +1,52 @@
+package com.notificacao.controller;
+
+import com.notificacao.model.Anexo;
+import com.notificacao.service.AttachmentStore;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/email/attachments")
+public class AttachmentController {
+
+    @Autowired
+    private AttachmentStore attachmentStore;
+
+    // === UPLOAD (AUTENTICADO) ===
+    // o id devolvido entra em "anexos" do /send: {"anexos": {"boleto.pdf": "<id>"}}
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> enviarMultipart(@RequestParam("arquivo") MultipartFile arquivo) throws IOException {
+        try (InputStream in = arquivo.getInputStream()) {
+            return armazenar(in, arquivo.getContentType());
+        }
+    }
+
+    // corpo cru: lido em streaming direto do request; o Content-Type do request vira o do anexo
+    @PostMapping
+    public ResponseEntity<?> enviar(HttpServletRequest request) throws IOException {
+        return armazenar(request.getInputStream(), request.getContentType());
+    }
+
+    private ResponseEntity<?> armazenar(InputStream in, String contentType) throws IOException {
+        try {
+            Anexo anexo = attachmentStore.armazenar(in, contentType);
+            return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
+                    "id", anexo.getId(),
+                    "tamanho", anexo.getTamanho(),
+                    "contentType", anexo.getContentType()
+            ));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("error", ex.getMessage()));
+        }
+    }
+}
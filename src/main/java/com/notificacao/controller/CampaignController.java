@@ -0,0 +1,77 @@
+package com.notificacao.controller;
+
+import com.notificacao.model.Campanha;
+import com.notificacao.model.Prioridade;
+import com.notificacao.service.CampaignService;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/email/campaigns")
+public class CampaignController {
+
+    @Autowired
+    private CampaignService campaignService;
+
+    // === IMPORT DE CSV (ADMIN) ===
+    // corpo cru (text/csv): lido em streaming direto do request, sem passar pelo parser multipart
+    @PostMapping(consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> importar(@RequestParam String template,
+                                      @RequestParam(required = false) Prioridade prioridade,
+                                      @RequestParam(defaultValue = ",") char separador,
+                                      HttpServletRequest request) throws IOException {
+        return importar(request.getInputStream(), template, prioridade, separador);
+    }
+
+    // multipart/form-data, campo "arquivo" (o Spring já fez spool em disco acima do threshold)
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> importarMultipart(@RequestParam String template,
+                                               @RequestParam(required = false) Prioridade prioridade,
+                                               @RequestParam(defaultValue = ",") char separador,
+                                               @RequestParam("arquivo") MultipartFile arquivo) throws IOException {
+        try (InputStream in = arquivo.getInputStream()) {
+            return importar(in, template, prioridade, separador);
+        }
+    }
+
+    // === PROGRESSO (ADMIN) ===
+    @GetMapping("/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> progresso(@PathVariable Long id) {
+        return campaignService.buscar(id)
+            .map((Campanha campanha) -> {
+                Map<String, Object> corpo = new LinkedHashMap<>();
+                corpo.put("campanha", campanha);
+                corpo.put("envios", campaignService.envios(id));
+                return ResponseEntity.ok(corpo);
+            })
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private ResponseEntity<?> importar(InputStream csv, String template, Prioridade prioridade, char separador)
+            throws IOException {
+        try {
+            Campanha campanha = campaignService.importar(csv, template, prioridade, separador);
+            return ResponseEntity.accepted().body(Map.of(
+                    "id", campanha.getId(),
+                    "status", campanha.getStatus(),
+                    "mensagem", "Importação iniciada; acompanhe em /api/email/campaigns/" + campanha.getId()
+            ));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+        }
+    }
+}
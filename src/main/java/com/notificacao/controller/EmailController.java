@@ -1,20 +1,38 @@
 package com.notificacao.controller;
 
+import com.notificacao.Dto.SendBatchItemResult;
 import com.notificacao.Dto.SendEmailRequest;
 import com.notificacao.model.EmailLog;
+import com.notificacao.model.EmailStatus;
+import com.notificacao.model.Prioridade;
 import com.notificacao.model.Usuario;
 import com.notificacao.repository.UsuarioRepository;
+import com.notificacao.service.AdmissionControl;
 import com.notificacao.service.EmailService;
+import com.notificacao.service.ExportService;
+import com.notificacao.service.IdempotencyKeyConflictException;
+import com.notificacao.service.IdempotencyService;
 
 import jakarta.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/email") // mantém o caminho singular conforme seu projeto
@@ -26,27 +44,43 @@ public class EmailController {
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    @Autowired
+    private AdmissionControl admissao;
+
+    @Autowired
+    private ExportService exportService;
+
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int MAX_CHAVE = 128; // chave do cliente; no banco vai o SHA-256 escopado
+
+    @Value("${mailnotify.batch.max-items:10000}")
+    private int maxItensLote;
+
     // === AÇÃO QUE DISPARA E-MAIL (USER autenticado) ===
     @PostMapping("/reset-senha")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<?> resetSenha(@RequestParam String email) {
+        long retryAfter = admissao.admitir(Prioridade.CRITICAL);
+        if (retryAfter > 0) {
+            return sobrecarga(retryAfter);
+        }
         return usuarioRepository.findByEmail(email)
             .map((Usuario usuario) -> {
                 String nome = usuario.getNome() != null ? usuario.getNome() : "usuário";
-                String conteudo = "Olá " + nome
-                        + ",\n\nClique no link para redefinir sua senha: "
-                        + "https://seu-frontend/reset?email=" + usuario.getEmail();
 
-                EmailLog log = emailService.enviarEmail(
+                // CRITICAL: fila própria + workers reservados, não espera o tráfego bulk
+                EmailLog log = emailService.enviarTemplate(
                         usuario.getEmail(),
-                        "Redefinição de Senha",
-                        conteudo
+                        "reset-senha",
+                        Map.of("nome", nome,
+                               "link", "https://seu-frontend/reset?email=" + usuario.getEmail()),
+                        Prioridade.CRITICAL
                 );
 
-                return ResponseEntity.ok(Map.of(
+                return ResponseEntity.accepted().body(Map.of(
                         "id", log.getId(),
                         "status", log.getStatus(),
-                        "mensagem", "E-mail enviado (ou tentativa registrada)"
+                        "mensagem", "E-mail enfileirado para envio"
                 ));
             })
             .orElseGet(() -> ResponseEntity.status(404).body(Map.of("error","usuário não encontrado")));
@@ -55,29 +89,166 @@ public class EmailController {
     // === HISTÓRICO (ADMIN) ===
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<EmailLog>> listar(@RequestParam(required = false) String status) {
-        return ResponseEntity.ok(emailService.listar(status));
+    // keyset: ?cursor=<proximoCursor da página anterior>; limite acima do máximo é truncado
+    public ResponseEntity<?> listar(@RequestParam(required = false) String status,
+                                    @RequestParam(required = false) String destinatario,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime de,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime ate,
+                                    @RequestParam(required = false) String cursor,
+                                    @RequestParam(required = false) Integer limite) {
+        try {
+            return ResponseEntity.ok(emailService.listar(filtroStatus(status), destinatario, de, ate, cursor, limite));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+        }
+    }
+
+    // === EXPORTAÇÃO (ADMIN) ===
+    // GET /api/email/export?format=ndjson|csv&gzip=true (mais os filtros do histórico): NDJSON é o padrão;
+    // "formato" é aceito como sinônimo de "format". Escrito em streaming, bloco a bloco, sem montar o arquivo em memória
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> exportar(@RequestParam(required = false) String status,
+                                      @RequestParam(required = false) String destinatario,
+                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime de,
+                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime ate,
+                                      @RequestParam(name = "format", required = false) String format,
+                                      @RequestParam(name = "formato", required = false) String formato,
+                                      @RequestParam(defaultValue = "false") boolean gzip) {
+        ExportService.Formato f;
+        EmailStatus filtro;
+        try {
+            f = ExportService.formato(format != null ? format : formato);
+            filtro = filtroStatus(status);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+        }
+        String arquivo = "emails." + (f == ExportService.Formato.CSV ? "csv" : "ndjson") + (gzip ? ".gz" : "");
+        MediaType tipo = gzip ? MediaType.parseMediaType("application/gzip")
+                : f == ExportService.Formato.CSV ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson");
+        StreamingResponseBody corpo = saida -> exportService.exportar(filtro, destinatario, de, ate, f, gzip, saida);
+        return ResponseEntity.ok()
+                .contentType(tipo)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + arquivo + "\"")
+                .body(corpo);
+    }
+
+    // corpo separado da listagem: só é lido (e descomprimido/renderizado) quando pedido
+    @GetMapping("/{id}/body")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> corpo(@PathVariable Long id) {
+        return emailService.corpo(id)
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     // === REENVIO MANUAL (ADMIN) ===
     @PostMapping("/{id}/retry")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<EmailLog> reenviar(@PathVariable Long id) {
-        return ResponseEntity.ok(emailService.reenviar(id));
+    public ResponseEntity<?> reenviar(@PathVariable Long id, Principal principal,
+                                      @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String chave) {
+        if (!chaveValida(chave)) {
+            return chaveInvalida();
+        }
+        try {
+            return ResponseEntity.ok(emailService.reenviar(id, principal.getName(), normalizar(chave)));
+        } catch (IdempotencyKeyConflictException ex) {
+            return conflitoChave(ex);
+        } catch (IllegalArgumentException ex) {
+            // anexo do e-mail original já coletado
+            return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+        }
     }
 
-        @PostMapping("/send")
+    // Idempotency-Key (por usuário e endpoint): repetir o POST com a mesma chave e o mesmo corpo
+    // devolve o mesmo id, sem novo envio; a mesma chave com outro corpo é recusada com 422
+    @PostMapping("/send")
     @PreAuthorize("hasRole('USER')")
-    public ResponseEntity<?> send(@Valid @RequestBody SendEmailRequest req) {
-        EmailLog log = emailService.enviarEmail(
-                req.getDestinatario(),
-                req.getAssunto(),
-                req.getConteudo()
-        );
-        return ResponseEntity.ok(Map.of(
-                "id", log.getId(),
-                "status", log.getStatus(),
-                "mensagem", "E-mail enviado (ou tentativa registrada)"
+    public ResponseEntity<?> send(@Valid @RequestBody SendEmailRequest req, Principal principal,
+                                  @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String chave) {
+        if (!chaveValida(chave)) {
+            return chaveInvalida();
+        }
+        IdempotencyService.Resposta resposta;
+        try {
+            // repetição não é trabalho novo: responde antes da admissão, nunca com 429
+            Optional<IdempotencyService.Resposta> anterior = emailService.repeticao(req, principal.getName(), normalizar(chave));
+            if (anterior.isPresent()) {
+                return enfileirado(anterior.get());
+            }
+            long retryAfter = admissao.admitir(req.getPrioridade());
+            if (retryAfter > 0) {
+                return sobrecarga(retryAfter);
+            }
+            resposta = emailService.enviar(req, principal.getName(), normalizar(chave));
+        } catch (IdempotencyKeyConflictException ex) {
+            return conflitoChave(ex);
+        } catch (IllegalArgumentException ex) {
+            // template inexistente, sem assunto ou anexo inválido
+            return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+        }
+        return enfileirado(resposta);
+    }
+
+    private static ResponseEntity<?> enfileirado(IdempotencyService.Resposta resposta) {
+        return ResponseEntity.accepted().body(Map.of(
+                "id", resposta.id(),
+                "status", resposta.status(),
+                "mensagem", "E-mail enfileirado para envio"
         ));
     }
+
+    // === ENVIO EM LOTE (USER autenticado) ===
+    @PostMapping("/send/batch")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> sendBatch(@RequestBody List<SendEmailRequest> itens) {
+        if (itens == null || itens.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "lote vazio"));
+        }
+        if (itens.size() > maxItensLote) {
+            return ResponseEntity.status(413).body(Map.of("error", "lote acima do limite de " + maxItensLote + " itens"));
+        }
+        // o lote só entra se todas as prioridades presentes nele estiverem abaixo do limite
+        Set<Prioridade> prioridades = EnumSet.noneOf(Prioridade.class);
+        for (SendEmailRequest item : itens) {
+            prioridades.add(item != null && item.getPrioridade() != null ? item.getPrioridade() : Prioridade.NORMAL);
+        }
+        for (Prioridade prioridade : prioridades) {
+            long retryAfter = admissao.admitir(prioridade);
+            if (retryAfter > 0) {
+                return sobrecarga(retryAfter);
+            }
+        }
+        List<SendBatchItemResult> resultados = emailService.enviarLote(itens);
+        return ResponseEntity.accepted().body(resultados);
+    }
+
+    private static ResponseEntity<?> sobrecarga(long retryAfter) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                .body(Map.of("error", "fila de envio acima do limite; tente novamente mais tarde",
+                             "retryAfter", retryAfter));
+    }
+
+    // vazio = sem filtro; nome desconhecido = IllegalArgumentException (400)
+    private static EmailStatus filtroStatus(String status) {
+        return status == null || status.isBlank() ? null : EmailStatus.de(status);
+    }
+
+    private static boolean chaveValida(String chave) {
+        return chave == null || chave.isBlank() || chave.strip().length() <= MAX_CHAVE;
+    }
+
+    private static String normalizar(String chave) {
+        return chave == null || chave.isBlank() ? null : chave.strip();
+    }
+
+    private static ResponseEntity<?> chaveInvalida() {
+        return ResponseEntity.badRequest().body(Map.of("error", IDEMPOTENCY_KEY + " acima de " + MAX_CHAVE + " caracteres"));
+    }
+
+    private static ResponseEntity<?> conflitoChave(IdempotencyKeyConflictException ex) {
+        return ResponseEntity.unprocessableEntity().body(Map.of("error", ex.getMessage()));
+    }
 }
@@ -0,0 +1,39 @@
+package com.notificacao.controller;
+
+import com.notificacao.model.EmailTemplate;
+import com.notificacao.service.TemplateService;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/email/templates")
+public class TemplateController {
+
+    @Autowired
+    private TemplateService templateService;
+
+    // === TEMPLATES DO BANCO (ADMIN) ===
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<EmailTemplate>> listar() {
+        return ResponseEntity.ok(templateService.listar());
+    }
+
+    // cria ou substitui; invalida o template compilado em cache
+    @PutMapping("/{nome}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> salvar(@PathVariable String nome, @RequestBody EmailTemplate template) {
+        template.setNome(nome);
+        try {
+            return ResponseEntity.ok(templateService.salvar(template));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+        }
+    }
+}
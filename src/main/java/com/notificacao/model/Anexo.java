@@ -0,0 +1,72 @@
+package com.notificacao.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Arquivo anexável, endereçado pelo conteúdo: o id é o SHA-256 dos bytes, então o
+ * mesmo PDF enviado a mil destinatários (ou subido duas vezes) existe uma vez só.
+ * Os bytes ficam em disco (mailnotify.attachments.dir), nunca no banco.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_anexo_visto", columnList = "vistoEm"))
+public class Anexo {
+
+    @Id
+    @Column(length = 64)
+    private String id;
+
+    @Column(length = 100)
+    private String contentType;
+
+    private long tamanho;
+
+    private LocalDateTime criadoEm;
+
+    // renovado a cada upload idêntico e a cada e-mail registrado com o anexo; base do GC
+    private LocalDateTime vistoEm;
+
+    public Anexo() {
+        this.criadoEm = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public long getTamanho() {
+        return tamanho;
+    }
+
+    public void setTamanho(long tamanho) {
+        this.tamanho = tamanho;
+    }
+
+    public LocalDateTime getCriadoEm() {
+        return criadoEm;
+    }
+
+    public void setCriadoEm(LocalDateTime criadoEm) {
+        this.criadoEm = criadoEm;
+    }
+
+    public LocalDateTime getVistoEm() {
+        return vistoEm;
+    }
+
+    public void setVistoEm(LocalDateTime vistoEm) {
+        this.vistoEm = vistoEm;
+    }
+}
@@ -0,0 +1,169 @@
+package com.notificacao.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/** Importação de CSV (POST /api/email/campaigns): progresso e erros do job. */
+@Entity
+public class Campanha {
+
+    public static final String IMPORTING = "IMPORTING";
+    public static final String DONE      = "DONE";
+    public static final String FAILED    = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 100)
+    private String template;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 10)
+    private Prioridade prioridade;
+
+    @Column(length = 10)
+    private String status;
+
+    // registros de dados lidos, logs gravados e linhas recusadas, gravados junto com cada bloco:
+    // linhas é também o ponto de retomada (registros do CSV já consumidos e commitados)
+    private long linhas;
+    private long importadas;
+    private long erros;
+
+    @Column(length = 500)
+    private String ultimoErro;
+
+    private LocalDateTime criadaEm;
+    private LocalDateTime concluidaEm;
+
+    // arquivo no spool (nome relativo a mailnotify.campaign.spool-dir) e separador, para retomar
+    @JsonIgnore
+    @Column(length = 255)
+    private String arquivo;
+
+    @Column(length = 1)
+    private String separador;
+
+    // instância que está importando e até quando; lease vencido = outra instância retoma
+    @Column(length = 64)
+    private String dono;
+    private LocalDateTime leaseAte;
+
+    public Campanha() {
+        this.criadaEm = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public void setTemplate(String template) {
+        this.template = template;
+    }
+
+    public Prioridade getPrioridade() {
+        return prioridade;
+    }
+
+    public void setPrioridade(Prioridade prioridade) {
+        this.prioridade = prioridade;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getLinhas() {
+        return linhas;
+    }
+
+    public void setLinhas(long linhas) {
+        this.linhas = linhas;
+    }
+
+    public long getImportadas() {
+        return importadas;
+    }
+
+    public void setImportadas(long importadas) {
+        this.importadas = importadas;
+    }
+
+    public long getErros() {
+        return erros;
+    }
+
+    public void setErros(long erros) {
+        this.erros = erros;
+    }
+
+    public String getUltimoErro() {
+        return ultimoErro;
+    }
+
+    public void setUltimoErro(String ultimoErro) {
+        this.ultimoErro = ultimoErro;
+    }
+
+    public LocalDateTime getCriadaEm() {
+        return criadaEm;
+    }
+
+    public void setCriadaEm(LocalDateTime criadaEm) {
+        this.criadaEm = criadaEm;
+    }
+
+    public LocalDateTime getConcluidaEm() {
+        return concluidaEm;
+    }
+
+    public void setConcluidaEm(LocalDateTime concluidaEm) {
+        this.concluidaEm = concluidaEm;
+    }
+
+    public String getArquivo() {
+        return arquivo;
+    }
+
+    public void setArquivo(String arquivo) {
+        this.arquivo = arquivo;
+    }
+
+    public String getSeparador() {
+        return separador;
+    }
+
+    public void setSeparador(String separador) {
+        this.separador = separador;
+    }
+
+    public String getDono() {
+        return dono;
+    }
+
+    public void setDono(String dono) {
+        this.dono = dono;
+    }
+
+    public LocalDateTime getLeaseAte() {
+        return leaseAte;
+    }
+
+    public void setLeaseAte(LocalDateTime leaseAte) {
+        this.leaseAte = leaseAte;
+    }
+}
@@ -0,0 +1,113 @@
+package com.notificacao.model;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Grava textos grandes (corpo do e-mail) comprimidos com gzip numa coluna binária.
+ *
+ * Abaixo de {@code limiteBytes}, ou quando o gzip não ganha nada, o texto vai como UTF-8
+ * cru. Na leitura o formato é reconhecido pelo cabeçalho gzip (1F 8B): nenhum texto UTF-8
+ * começa com esses bytes, então linhas antigas (texto puro migrado de LONGTEXT) e novas
+ * convivem na mesma coluna.
+ *
+ * Instanciado pelo Hibernate via container de beans do Spring (injeta o MeterRegistry);
+ * também é bean para quem grava a coluna por SQL nativo (ver BodyStore).
+ */
+@Converter
+@Component
+public class CompressedTextConverter implements AttributeConverter<String, byte[]> {
+
+    private final int limiteBytes;
+
+    private final Timer compressao;
+    private final Timer descompressao;
+    private final DistributionSummary razao;
+    private final Counter bytesOriginais;
+    private final Counter bytesGravados;
+
+    public CompressedTextConverter(MeterRegistry registry,
+                                   @Value("${mailnotify.storage.compress-threshold-bytes:1024}") int limiteBytes) {
+        this.limiteBytes = limiteBytes;
+        this.compressao = Timer.builder("mailnotify.storage.codec").tag("operation", "compress").register(registry);
+        this.descompressao = Timer.builder("mailnotify.storage.codec").tag("operation", "decompress").register(registry);
+        this.razao = DistributionSummary.builder("mailnotify.storage.compression.ratio")
+                .description("Tamanho original / tamanho gravado dos corpos comprimidos").register(registry);
+        this.bytesOriginais = Counter.builder("mailnotify.storage.body.bytes").tag("stage", "original").register(registry);
+        this.bytesGravados = Counter.builder("mailnotify.storage.body.bytes").tag("stage", "stored").register(registry);
+    }
+
+    @Override
+    public byte[] convertToDatabaseColumn(String texto) {
+        if (texto == null) {
+            return null;
+        }
+        byte[] cru = texto.getBytes(StandardCharsets.UTF_8);
+        byte[] gravado = cru;
+        if (cru.length >= limiteBytes) {
+            long inicio = System.nanoTime();
+            byte[] comprimido = comprimir(cru);
+            compressao.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            if (comprimido.length < cru.length) {
+                gravado = comprimido;
+                razao.record((double) cru.length / comprimido.length);
+            }
+        }
+        bytesOriginais.increment(cru.length);
+        bytesGravados.increment(gravado.length);
+        return gravado;
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] coluna) {
+        if (coluna == null) {
+            return null;
+        }
+        if (!gzip(coluna)) {
+            return new String(coluna, StandardCharsets.UTF_8); // pequeno ou linha anterior à compressão
+        }
+        long inicio = System.nanoTime();
+        try {
+            return new String(descomprimir(coluna), StandardCharsets.UTF_8);
+        } finally {
+            descompressao.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    static boolean gzip(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0xff) == 0x1f && (bytes[1] & 0xff) == 0x8b;
+    }
+
+    private static byte[] comprimir(byte[] cru) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(cru.length / 3 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out, 8192)) {
+            gz.write(cru);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex); // só memória: não acontece
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] descomprimir(byte[] comprimido) {
+        try (GZIPInputStream gz = new GZIPInputStream(new ByteArrayInputStream(comprimido), 8192)) {
+            return gz.readAllBytes();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Corpo comprimido corrompido", ex);
+        }
+    }
+}
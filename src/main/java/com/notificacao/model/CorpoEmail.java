@@ -0,0 +1,75 @@
+package com.notificacao.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Corpo de e-mail endereçado pelo conteúdo: o id é o SHA-256 do texto, e cada
+ * {@link EmailLog} guarda só a referência ({@code corpoHash}). O mesmo corpo de uma
+ * campanha ou de um reset de senha é gravado uma única vez.
+ *
+ * {@code vistoEm} é renovado sempre que um envio volta a referenciar o corpo; o GC só
+ * apaga corpos sem referência e não vistos há mais que a carência.
+ */
+@Entity
+@Table(name = "corpo_email", indexes = {
+        @Index(name = "idx_corpo_email_visto", columnList = "vistoEm")
+})
+public class CorpoEmail {
+
+    @Id
+    @Column(length = 64)
+    private String id;
+
+    @Lob
+    @Convert(converter = CompressedTextConverter.class)
+    @Column(columnDefinition = "LONGBLOB")
+    private String conteudo;
+
+    // tamanho do texto em UTF-8, antes da compressão
+    private long tamanho;
+
+    private LocalDateTime criadoEm;
+
+    private LocalDateTime vistoEm;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getConteudo() {
+        return conteudo;
+    }
+
+    public void setConteudo(String conteudo) {
+        this.conteudo = conteudo;
+    }
+
+    public long getTamanho() {
+        return tamanho;
+    }
+
+    public void setTamanho(long tamanho) {
+        this.tamanho = tamanho;
+    }
+
+    public LocalDateTime getCriadoEm() {
+        return criadoEm;
+    }
+
+    public void setCriadoEm(LocalDateTime criadoEm) {
+        this.criadoEm = criadoEm;
+    }
+
+    public LocalDateTime getVistoEm() {
+        return vistoEm;
+    }
+
+    public void setVistoEm(LocalDateTime vistoEm) {
+        this.vistoEm = vistoEm;
+    }
+}
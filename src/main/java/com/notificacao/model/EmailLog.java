@@ -4,24 +4,123 @@ package com.notificacao.model;
 
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 @Entity
+// status + proximaTentativa: outbox (vencidos) e horizonte de agendados (sendAt) por range scan
+@Table(indexes = {
+        @Index(name = "idx_email_log_status_proxima", columnList = "status, proximaTentativa"),
+        // claim da outbox por prioridade (findProntos): só as linhas da fila pedida são examinadas
+        @Index(name = "idx_email_log_status_prioridade_proxima", columnList = "status, prioridade, proximaTentativa"),
+        @Index(name = "idx_email_log_campanha", columnList = "campanhaId"),
+        @Index(name = "idx_email_log_corpo", columnList = "corpoHash"),
+        // keyset do histórico (GET /api/email): ordem (dataHora, id), com e sem filtro
+        @Index(name = "idx_email_log_data", columnList = "dataHora, id"),
+        @Index(name = "idx_email_log_status_data", columnList = "status, dataHora, id"),
+        @Index(name = "idx_email_log_destinatario_data", columnList = "destinatario, dataHora, id"),
+        @Index(name = "idx_email_log_destinatario_status_data", columnList = "destinatario, status, dataHora, id")
+})
 public class EmailLog {
 
+    // SEQUENCE (emulada por tabela no MySQL) em vez de IDENTITY: permite ao Hibernate
+    // agrupar os INSERTs em batch JDBC e reservar ids em blocos de 50
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "email_log_seq")
+    @SequenceGenerator(name = "email_log_seq", sequenceName = "email_log_seq", allocationSize = 50)
     private Long id;
     private String destinatario;
     private String assunto;
 
+    // corpo já expandido, só em logs anteriores à tabela corpo_email (ver corpoHash).
+    // Gravado em binário, comprimido acima do limite (ver CompressedTextConverter)
     @Lob
+    @Convert(converter = CompressedTextConverter.class)
+    @Column(columnDefinition = "LONGBLOB")
     private String conteudo;
-    private String status;
+
+    // SHA-256 do corpo pronto em corpo_email (BodyStore); null quando o e-mail usa template
+    @Column(length = 64)
+    private String corpoHash;
+
+    private String templateId;
+
+    // versão (SHA-256 do fonte) do template renderizado no último envio; ao registrar, a versão atual
+    @Column(length = 64)
+    private String templateVersao;
+
+    @Lob
+    @Convert(converter = MapJsonConverter.class)
+    private Map<String, String> variaveis;
+
+    // anexos: nome exibido -> id (SHA-256) do arquivo em AttachmentStore
+    @Lob
+    @Convert(converter = MapJsonConverter.class)
+    private Map<String, String> anexos;
+
+    // os mesmos ids em email_log_anexo, indexados por anexo: o GC acha referências sem ler o JSON
+    // (preenchido por setAnexos; LAZY, só lido quando pedido)
+    @ElementCollection
+    @CollectionTable(name = "email_log_anexo", joinColumns = @JoinColumn(name = "log_id"),
+            indexes = @Index(name = "idx_email_log_anexo_anexo", columnList = "anexo_id"))
+    @Column(name = "anexo_id", length = 64, nullable = false)
+    private Set<String> anexoIds = new HashSet<>();
+
+    // TINYINT com o código do enum (ver EmailStatusConverter / EmailLogStatusMigration)
+    @Convert(converter = EmailStatusConverter.class)
+    @Column(columnDefinition = "TINYINT")
+    private EmailStatus status;
     private String erro;
     private LocalDateTime dataHora;
 
+    // Retry durável: quantas tentativas já foram feitas e quando a próxima vence
+    private int tentativas;
+    private LocalDateTime proximaTentativa;
+
+    // lease do envio em andamento (status SENDING), estendido por heartbeat; também marca
+    // os logs reivindicados por uma instância e ainda na fila dela
+    private LocalDateTime leaseAte;
+
+    // instância (mailnotify.node-id) que reivindicou o log por último
+    @Column(length = 64)
+    private String dono;
+
+    // horário pedido pelo cliente (sendAt); a primeira proximaTentativa parte dele
+    private LocalDateTime enviarEm;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 10)
+    private Prioridade prioridade = Prioridade.NORMAL;
+
+    // nome do relay SMTP que entregou a mensagem
+    private String relay;
+
+    // Idempotency-Key escopada (SHA-256 de usuário + endpoint + chave do cliente);
+    // o índice único barra o envio duplicado mesmo entre instâncias
+    @Column(unique = true, length = 128)
+    private String chaveIdempotencia;
+
+    // SHA-256 da requisição que usou a chave: a mesma chave com outro conteúdo é recusada
+    @Column(length = 64)
+    private String hashRequisicao;
+
+    // id do log que este reenvio repete (POST /{id}/retry)
+    private Long reenvioDe;
+
+    // categoria do produtor; categorias configuradas em mailnotify.digest são agrupadas
+    @Column(length = 50)
+    private String categoria;
+
+    // log do digest que entregou este e-mail (status DIGESTED)
+    private Long digestId;
+
+    // importação de CSV que gerou este log
+    private Long campanhaId;
+
     public EmailLog() {
         this.dataHora = LocalDateTime.now();
+        this.proximaTentativa = this.dataHora;
     }
 
     public Long getId() {
@@ -56,11 +155,11 @@ public class EmailLog {
         this.conteudo = conteudo;
     }
 
-    public String getStatus() {
+    public EmailStatus getStatus() {
         return status;
     }
 
-    public void setStatus(String status) {
+    public void setStatus(EmailStatus status) {
         this.status = status;
     }
 
@@ -79,5 +178,154 @@ public class EmailLog {
     public void setDataHora(LocalDateTime dataHora) {
         this.dataHora = dataHora;
     }
-}
 
+    public int getTentativas() {
+        return tentativas;
+    }
+
+    public void setTentativas(int tentativas) {
+        this.tentativas = tentativas;
+    }
+
+    public LocalDateTime getProximaTentativa() {
+        return proximaTentativa;
+    }
+
+    public void setProximaTentativa(LocalDateTime proximaTentativa) {
+        this.proximaTentativa = proximaTentativa;
+    }
+
+    public String getRelay() {
+        return relay;
+    }
+
+    public void setRelay(String relay) {
+        this.relay = relay;
+    }
+
+    public Prioridade getPrioridade() {
+        return prioridade;
+    }
+
+    public void setPrioridade(Prioridade prioridade) {
+        // nunca null: a outbox filtra por igualdade (ver idx_email_log_status_prioridade_proxima)
+        this.prioridade = prioridade != null ? prioridade : Prioridade.NORMAL;
+    }
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public void setTemplateId(String templateId) {
+        this.templateId = templateId;
+    }
+
+    public String getTemplateVersao() {
+        return templateVersao;
+    }
+
+    public void setTemplateVersao(String templateVersao) {
+        this.templateVersao = templateVersao;
+    }
+
+    public Map<String, String> getVariaveis() {
+        return variaveis;
+    }
+
+    public void setVariaveis(Map<String, String> variaveis) {
+        this.variaveis = variaveis;
+    }
+
+    public String getChaveIdempotencia() {
+        return chaveIdempotencia;
+    }
+
+    public void setChaveIdempotencia(String chaveIdempotencia) {
+        this.chaveIdempotencia = chaveIdempotencia;
+    }
+
+    public String getHashRequisicao() {
+        return hashRequisicao;
+    }
+
+    public void setHashRequisicao(String hashRequisicao) {
+        this.hashRequisicao = hashRequisicao;
+    }
+
+    public Long getReenvioDe() {
+        return reenvioDe;
+    }
+
+    public void setReenvioDe(Long reenvioDe) {
+        this.reenvioDe = reenvioDe;
+    }
+
+    public String getCategoria() {
+        return categoria;
+    }
+
+    public void setCategoria(String categoria) {
+        this.categoria = categoria;
+    }
+
+    public Long getDigestId() {
+        return digestId;
+    }
+
+    public void setDigestId(Long digestId) {
+        this.digestId = digestId;
+    }
+
+    public LocalDateTime getEnviarEm() {
+        return enviarEm;
+    }
+
+    public void setEnviarEm(LocalDateTime enviarEm) {
+        this.enviarEm = enviarEm;
+    }
+
+    public LocalDateTime getLeaseAte() {
+        return leaseAte;
+    }
+
+    public void setLeaseAte(LocalDateTime leaseAte) {
+        this.leaseAte = leaseAte;
+    }
+
+    public String getDono() {
+        return dono;
+    }
+
+    public void setDono(String dono) {
+        this.dono = dono;
+    }
+
+    public Long getCampanhaId() {
+        return campanhaId;
+    }
+
+    public void setCampanhaId(Long campanhaId) {
+        this.campanhaId = campanhaId;
+    }
+
+    public Map<String, String> getAnexos() {
+        return anexos;
+    }
+
+    public void setAnexos(Map<String, String> anexos) {
+        this.anexos = anexos;
+        this.anexoIds = anexos == null ? new HashSet<>() : new HashSet<>(anexos.values());
+    }
+
+    public Set<String> getAnexoIds() {
+        return anexoIds;
+    }
+
+    public String getCorpoHash() {
+        return corpoHash;
+    }
+
+    public void setCorpoHash(String corpoHash) {
+        this.corpoHash = corpoHash;
+    }
+}
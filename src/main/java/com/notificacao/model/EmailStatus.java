@@ -0,0 +1,57 @@
+package com.notificacao.model;
+
+import java.util.Locale;
+
+/**
+ * Status possíveis de um {@link EmailLog}.
+ *
+ * Gravado como TINYINT pelo {@link EmailStatusConverter} usando {@link #getCodigo()}, nunca o
+ * ordinal: reordenar ou inserir constantes aqui não muda o que já está no banco.
+ */
+public enum EmailStatus {
+
+    PENDING(0),
+    RETRYING(1),
+    /** Envio SMTP em andamento; vale até {@link EmailLog#getLeaseAte()}. */
+    SENDING(2),
+    SUCCESS(3),
+    FAILED(4),
+    /** Aguardando a janela de digest da categoria fechar. */
+    BUFFERED(5),
+    /** Entregue dentro de um digest (ver {@link EmailLog#getDigestId()}). */
+    DIGESTED(6);
+
+    private static final EmailStatus[] POR_CODIGO = new EmailStatus[values().length];
+
+    static {
+        for (EmailStatus s : values()) {
+            POR_CODIGO[s.codigo] = s;
+        }
+    }
+
+    private final int codigo;
+
+    EmailStatus(int codigo) {
+        this.codigo = codigo;
+    }
+
+    public int getCodigo() {
+        return codigo;
+    }
+
+    public static EmailStatus deCodigo(int codigo) {
+        if (codigo < 0 || codigo >= POR_CODIGO.length || POR_CODIGO[codigo] == null) {
+            throw new IllegalArgumentException("código de status desconhecido: " + codigo);
+        }
+        return POR_CODIGO[codigo];
+    }
+
+    /** Nome vindo da API (maiúsculas ou não). Lança IllegalArgumentException se não existir. */
+    public static EmailStatus de(String nome) {
+        try {
+            return valueOf(nome.strip().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("status inválido: " + nome);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.notificacao.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/** Grava {@link EmailStatus} como o código numérico estável (coluna TINYINT). */
+@Converter
+public class EmailStatusConverter implements AttributeConverter<EmailStatus, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(EmailStatus status) {
+        return status == null ? null : status.getCodigo();
+    }
+
+    @Override
+    public EmailStatus convertToEntityAttribute(Integer codigo) {
+        return codigo == null ? null : EmailStatus.deCodigo(codigo);
+    }
+}
@@ -0,0 +1,70 @@
+package com.notificacao.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Template de notificação com placeholders {{variavel}}. Templates do banco têm
+ * precedência sobre os do classpath (templates/email/&lt;nome&gt;.subject|.txt|.html).
+ */
+@Entity
+public class EmailTemplate {
+
+    @Id
+    @Column(length = 100)
+    private String nome;
+
+    private String assunto;
+
+    @Lob
+    private String corpoTexto;
+
+    @Lob
+    private String corpoHtml;
+
+    private LocalDateTime atualizadoEm;
+
+    public EmailTemplate() {
+        this.atualizadoEm = LocalDateTime.now();
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public void setNome(String nome) {
+        this.nome = nome;
+    }
+
+    public String getAssunto() {
+        return assunto;
+    }
+
+    public void setAssunto(String assunto) {
+        this.assunto = assunto;
+    }
+
+    public String getCorpoTexto() {
+        return corpoTexto;
+    }
+
+    public void setCorpoTexto(String corpoTexto) {
+        this.corpoTexto = corpoTexto;
+    }
+
+    public String getCorpoHtml() {
+        return corpoHtml;
+    }
+
+    public void setCorpoHtml(String corpoHtml) {
+        this.corpoHtml = corpoHtml;
+    }
+
+    public LocalDateTime getAtualizadoEm() {
+        return atualizadoEm;
+    }
+
+    public void setAtualizadoEm(LocalDateTime atualizadoEm) {
+        this.atualizadoEm = atualizadoEm;
+    }
+}
@@ -0,0 +1,41 @@
+package com.notificacao.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.Map;
+
+/** Grava um Map&lt;String, String&gt; (ex.: variáveis de template) como JSON numa coluna texto. */
+@Converter
+public class MapJsonConverter implements AttributeConverter<Map<String, String>, String> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, String>> TIPO = new TypeReference<>() {};
+
+    @Override
+    public String convertToDatabaseColumn(Map<String, String> valor) {
+        if (valor == null) {
+            return null;
+        }
+        try {
+            return MAPPER.writeValueAsString(valor);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Falha ao serializar variáveis", e);
+        }
+    }
+
+    @Override
+    public Map<String, String> convertToEntityAttribute(String json) {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(json, TIPO);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Falha ao ler variáveis", e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.notificacao.model;
+
+/**
+ * Prioridade de entrega. Cada uma tem a sua fila no dispatcher; CRITICAL
+ * (ex.: reset de senha) ainda conta com workers reservados.
+ */
+public enum Prioridade {
+    CRITICAL,
+    NORMAL,
+    BULK
+}
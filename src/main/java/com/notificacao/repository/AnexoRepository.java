@@ -0,0 +1,52 @@
+package com.notificacao.repository;
+
+import com.notificacao.model.Anexo;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AnexoRepository extends JpaRepository<Anexo, String> {
+
+    // grava o anexo ou, se o hash já existir, só renova vistoEm (o GC não apaga o que foi tocado)
+    @Modifying
+    @Transactional
+    @Query(value = "insert into anexo (id, content_type, tamanho, criado_em, visto_em) "
+                 + "values (:id, :contentType, :tamanho, :agora, :agora) "
+                 + "on duplicate key update visto_em = :agora", nativeQuery = true)
+    int gravar(@Param("id") String id,
+               @Param("contentType") String contentType,
+               @Param("tamanho") long tamanho,
+               @Param("agora") LocalDateTime agora);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update anexo set visto_em = :agora where id in (:ids)", nativeQuery = true)
+    int tocar(@Param("ids") Collection<String> ids, @Param("agora") LocalDateTime agora);
+
+    // GC: anexos não vistos desde o limite que nenhum envio ainda por fazer (status em :ativos)
+    // referencia. Anti-join pelo índice de email_log_anexo(anexo_id) + PK de email_log
+    @Query(value = "select a.id from anexo a where coalesce(a.visto_em, a.criado_em) < :limite "
+                 + "and not exists (select 1 from email_log_anexo x join email_log e on e.id = x.log_id "
+                 + "where x.anexo_id = a.id and e.status in (:ativos)) limit :lote", nativeQuery = true)
+    List<String> orfaos(@Param("limite") LocalDateTime limite,
+                        @Param("ativos") Collection<Integer> ativos,
+                        @Param("lote") int lote);
+
+    // apaga só se continuar órfão: um upload ou envio concorrente renovou vistoEm
+    @Modifying
+    @Transactional
+    @Query(value = "delete from anexo where id = :id and coalesce(visto_em, criado_em) < :limite "
+                 + "and not exists (select 1 from email_log_anexo x join email_log e on e.id = x.log_id "
+                 + "where x.anexo_id = :id and e.status in (:ativos))", nativeQuery = true)
+    int apagarSeOrfao(@Param("id") String id,
+                      @Param("limite") LocalDateTime limite,
+                      @Param("ativos") Collection<Integer> ativos);
+}
@@ -0,0 +1,62 @@
+package com.notificacao.repository;
+
+import com.notificacao.model.Campanha;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CampanhaRepository extends JpaRepository<Campanha, Long> {
+
+    // Progresso do import (ponto de retomada incluso), gravado junto com cada bloco de logs;
+    // renova o lease e só vale para o dono: 0 = outra instância assumiu o import
+    @Modifying
+    @Query("update Campanha c set c.linhas = :linhas, c.importadas = :importadas, c.erros = :erros, "
+         + "c.ultimoErro = :ultimoErro, c.leaseAte = :leaseAte "
+         + "where c.id = :id and c.dono = :dono and c.status = 'IMPORTING'")
+    int atualizarProgresso(@Param("id") Long id,
+                           @Param("dono") String dono,
+                           @Param("linhas") long linhas,
+                           @Param("importadas") long importadas,
+                           @Param("erros") long erros,
+                           @Param("ultimoErro") String ultimoErro,
+                           @Param("leaseAte") LocalDateTime leaseAte);
+
+    // Imports sem dono vivo: processo caiu (ou foi parado) no meio
+    @Query("select c.id from Campanha c where c.status = 'IMPORTING' and (c.leaseAte is null or c.leaseAte < :agora)")
+    List<Long> findImportsSemDono(@Param("agora") LocalDateTime agora);
+
+    // Assume o import se ele é desta instância ou se o lease venceu; 0 = outra instância está com ele
+    @Modifying
+    @Transactional
+    @Query("update Campanha c set c.dono = :dono, c.leaseAte = :leaseAte "
+         + "where c.id = :id and c.status = 'IMPORTING' "
+         + "and (c.dono = :dono or c.leaseAte is null or c.leaseAte < :agora)")
+    int reivindicar(@Param("id") Long id,
+                    @Param("dono") String dono,
+                    @Param("agora") LocalDateTime agora,
+                    @Param("leaseAte") LocalDateTime leaseAte);
+
+    // Shutdown no meio do import: solta o lease para a próxima instância retomar na hora
+    @Modifying
+    @Transactional
+    @Query("update Campanha c set c.leaseAte = null where c.id = :id and c.dono = :dono and c.status = 'IMPORTING'")
+    int liberar(@Param("id") Long id, @Param("dono") String dono);
+
+    @Modifying
+    @Transactional
+    @Query("update Campanha c set c.status = :status, c.ultimoErro = coalesce(:ultimoErro, c.ultimoErro), "
+         + "c.concluidaEm = :agora, c.leaseAte = null "
+         + "where c.id = :id and c.dono = :dono and c.status = 'IMPORTING'")
+    int concluir(@Param("id") Long id,
+                 @Param("dono") String dono,
+                 @Param("status") String status,
+                 @Param("ultimoErro") String ultimoErro,
+                 @Param("agora") LocalDateTime agora);
+}
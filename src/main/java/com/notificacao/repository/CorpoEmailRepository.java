@@ -0,0 +1,35 @@
+package com.notificacao.repository;
+
+import com.notificacao.model.CorpoEmail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface CorpoEmailRepository extends JpaRepository<CorpoEmail, String> {
+
+    // grava o corpo ou, se o hash já existir, só renova vistoEm (sem erro de chave duplicada
+    // derrubando a transação do envio). conteudo já vem codificado pelo CompressedTextConverter
+    @Modifying
+    @Transactional
+    @Query(value = "insert into corpo_email (id, conteudo, tamanho, criado_em, visto_em) "
+                 + "values (:id, :conteudo, :tamanho, :agora, :agora) "
+                 + "on duplicate key update visto_em = :agora", nativeQuery = true)
+    int gravar(@Param("id") String id,
+               @Param("conteudo") byte[] conteudo,
+               @Param("tamanho") long tamanho,
+               @Param("agora") LocalDateTime agora);
+
+    // GC: corpos que nenhum log referencia e que ninguém viu desde o limite, em lotes
+    @Modifying
+    @Transactional
+    @Query(value = "delete from corpo_email where visto_em < :limite "
+                 + "and not exists (select 1 from email_log e where e.corpo_hash = corpo_email.id) "
+                 + "limit :lote", nativeQuery = true)
+    int apagarOrfaos(@Param("limite") LocalDateTime limite, @Param("lote") int lote);
+}
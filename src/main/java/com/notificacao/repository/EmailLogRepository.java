@@ -1,17 +1,233 @@
 package com.notificacao.repository;
 
 import com.notificacao.model.EmailLog;
+import com.notificacao.model.EmailStatus;
+import com.notificacao.model.Prioridade;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface EmailLogRepository extends JpaRepository<EmailLog, Long> {
 
-    // Lista tudo em ordem decrescente por data/hora
-    List<EmailLog> findAllByOrderByDataHoraDesc();
+    // Limites do histórico sem filtro de data (faixa do DATETIME do MySQL)
+    LocalDateTime HISTORICO_INICIO = LocalDateTime.of(1000, 1, 1, 0, 0);
+    LocalDateTime HISTORICO_FIM = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
 
-    // Lista filtrando por status (SUCCESS/FAILED/RETRYING/PENDING), ignorando maiúsculas/minúsculas
-    List<EmailLog> findAllByStatusIgnoreCaseOrderByDataHoraDesc(String status);
+    /**
+     * Histórico por keyset em (dataHora, id), do mais novo para o mais antigo; só metadados.
+     * Filtros null são ignorados; {@code de} é inclusivo e {@code ate} exclusivo; {@code cursorData}
+     * e {@code cursorId} são o último item da página anterior.
+     *
+     * Uma consulta por combinação de filtros, sem "(:x is null or ...)": cada uma cai num range
+     * scan do índice composto do filtro presente (status e/ou destinatario + dataHora + id). O
+     * limite superior é o que vier antes: o cursor ou o {@code ate}.
+     */
+    default List<ResumoEnvio> buscarHistorico(EmailStatus status, String destinatario,
+                                              LocalDateTime de, LocalDateTime ate,
+                                              LocalDateTime cursorData, Long cursorId,
+                                              Pageable pageable) {
+        LocalDateTime inicio = de != null ? de : HISTORICO_INICIO;
+        LocalDateTime limiteData = ate != null ? ate : HISTORICO_FIM;
+        // sem cursor o limite é só a data (exclusiva): nenhum id é menor que Long.MIN_VALUE
+        Long limiteId = Long.MIN_VALUE;
+        if (cursorData != null && cursorData.isBefore(limiteData)) {
+            limiteData = cursorData;
+            limiteId = cursorId;
+        }
+        if (status != null && destinatario != null) {
+            return historicoPorStatusEDestinatario(status, destinatario, inicio, limiteData, limiteId, pageable);
+        }
+        if (status != null) {
+            return historicoPorStatus(status, inicio, limiteData, limiteId, pageable);
+        }
+        if (destinatario != null) {
+            return historicoPorDestinatario(destinatario, inicio, limiteData, limiteId, pageable);
+        }
+        return historico(inicio, limiteData, limiteId, pageable);
+    }
+
+    // idx_email_log_data
+    @Query("select e.id as id, e.destinatario as destinatario, e.assunto as assunto, e.status as status, "
+         + "e.erro as erro, e.dataHora as dataHora from EmailLog e "
+         + "where e.dataHora >= :de "
+         + "and (e.dataHora < :limiteData or (e.dataHora = :limiteData and e.id < :limiteId)) "
+         + "order by e.dataHora desc, e.id desc")
+    List<ResumoEnvio> historico(@Param("de") LocalDateTime de,
+                                @Param("limiteData") LocalDateTime limiteData,
+                                @Param("limiteId") Long limiteId,
+                                Pageable pageable);
+
+    // idx_email_log_status_data
+    @Query("select e.id as id, e.destinatario as destinatario, e.assunto as assunto, e.status as status, "
+         + "e.erro as erro, e.dataHora as dataHora from EmailLog e "
+         + "where e.status = :status "
+         + "and e.dataHora >= :de "
+         + "and (e.dataHora < :limiteData or (e.dataHora = :limiteData and e.id < :limiteId)) "
+         + "order by e.dataHora desc, e.id desc")
+    List<ResumoEnvio> historicoPorStatus(@Param("status") EmailStatus status,
+                                         @Param("de") LocalDateTime de,
+                                         @Param("limiteData") LocalDateTime limiteData,
+                                         @Param("limiteId") Long limiteId,
+                                         Pageable pageable);
+
+    // idx_email_log_destinatario_data
+    @Query("select e.id as id, e.destinatario as destinatario, e.assunto as assunto, e.status as status, "
+         + "e.erro as erro, e.dataHora as dataHora from EmailLog e "
+         + "where e.destinatario = :destinatario "
+         + "and e.dataHora >= :de "
+         + "and (e.dataHora < :limiteData or (e.dataHora = :limiteData and e.id < :limiteId)) "
+         + "order by e.dataHora desc, e.id desc")
+    List<ResumoEnvio> historicoPorDestinatario(@Param("destinatario") String destinatario,
+                                               @Param("de") LocalDateTime de,
+                                               @Param("limiteData") LocalDateTime limiteData,
+                                               @Param("limiteId") Long limiteId,
+                                               Pageable pageable);
+
+    // idx_email_log_destinatario_status_data
+    @Query("select e.id as id, e.destinatario as destinatario, e.assunto as assunto, e.status as status, "
+         + "e.erro as erro, e.dataHora as dataHora from EmailLog e "
+         + "where e.status = :status and e.destinatario = :destinatario "
+         + "and e.dataHora >= :de "
+         + "and (e.dataHora < :limiteData or (e.dataHora = :limiteData and e.id < :limiteId)) "
+         + "order by e.dataHora desc, e.id desc")
+    List<ResumoEnvio> historicoPorStatusEDestinatario(@Param("status") EmailStatus status,
+                                                      @Param("destinatario") String destinatario,
+                                                      @Param("de") LocalDateTime de,
+                                                      @Param("limiteData") LocalDateTime limiteData,
+                                                      @Param("limiteId") Long limiteId,
+                                                      Pageable pageable);
+
+    // Próximo lote da outbox numa prioridade: PENDING/RETRYING cuja próxima tentativa já venceu
+    // e sem lease válido de outra instância. Range scan em idx_email_log_status_prioridade_proxima:
+    // sem OR, o InnoDB só examina (e trava) linhas desta prioridade já vencidas — linhas antigas
+    // sem prioridade/data são preenchidas na subida (EmailLogPrioridadeMigration).
+    // FOR UPDATE SKIP LOCKED: instâncias concorrentes pegam linhas diferentes
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2")) // -2 = SKIP LOCKED
+    @Query("select e from EmailLog e where e.status in :status and e.prioridade = :prioridade "
+         + "and e.proximaTentativa <= :agora "
+         + "and (e.leaseAte is null or e.leaseAte < :agora) "
+         + "order by e.proximaTentativa asc")
+    List<EmailLog> findProntos(@Param("status") Collection<EmailStatus> status,
+                               @Param("prioridade") Prioridade prioridade,
+                               @Param("agora") LocalDateTime agora,
+                               Pageable pageable);
+
+    // Reivindicação atômica de um log antes do envio (compare-and-set): 1 = é deste nó
+    @Modifying
+    @Transactional
+    @Query("update EmailLog e set e.dono = :dono, e.leaseAte = :ate "
+         + "where e.id = :id and e.status in :status "
+         + "and (e.proximaTentativa is null or e.proximaTentativa <= :agora) "
+         + "and (e.leaseAte is null or e.leaseAte < :agora or e.dono = :dono)")
+    int reivindicar(@Param("id") Long id,
+                    @Param("status") Collection<EmailStatus> status,
+                    @Param("dono") String dono,
+                    @Param("agora") LocalDateTime agora,
+                    @Param("ate") LocalDateTime ate);
+
+    // Logs SENDING cujo lease venceu (o processo que os enviava morreu)
+    @Query("select e.id from EmailLog e where e.status = :status and e.leaseAte < :agora order by e.leaseAte asc")
+    List<Long> findLeasesVencidos(@Param("status") EmailStatus status,
+                                  @Param("agora") LocalDateTime agora,
+                                  Pageable pageable);
+
+    // Devolve à outbox; a condição no lease evita pisar num heartbeat que chegou depois da leitura
+    @Modifying
+    @Transactional
+    @Query("update EmailLog e set e.status = :novo, e.proximaTentativa = :agora, e.leaseAte = null "
+         + "where e.id in :ids and e.status = :atual and e.leaseAte < :agora")
+    int liberarLeases(@Param("ids") Collection<Long> ids,
+                      @Param("atual") EmailStatus atual,
+                      @Param("novo") EmailStatus novo,
+                      @Param("agora") LocalDateTime agora);
+
+    // Heartbeat dos envios em andamento
+    @Modifying
+    @Transactional
+    @Query("update EmailLog e set e.leaseAte = :ate where e.id in :ids and e.status = :status and e.dono = :dono")
+    int renovarLeases(@Param("ids") Collection<Long> ids,
+                      @Param("status") EmailStatus status,
+                      @Param("dono") String dono,
+                      @Param("ate") LocalDateTime ate);
+
+    // Idempotency-Key já usada (índice único em chaveIdempotencia)
+    Optional<EmailLog> findByChaveIdempotencia(String chaveIdempotencia);
+
+    // Só o status (repetição de uma Idempotency-Key ainda em andamento)
+    @Query("select e.status from EmailLog e where e.id = :id")
+    Optional<EmailStatus> findStatusById(@Param("id") Long id);
+
+    // Reenvio ainda válido (pendente ou entregue) de um log; evita dois retries do mesmo e-mail
+    Optional<EmailLog> findFirstByReenvioDeAndStatusInOrderByIdDesc(Long reenvioDe, Collection<EmailStatus> status);
+
+    // Janelas de digest abertas: um resumo por (destinatário, categoria) com logs BUFFERED
+    @Query("select e.destinatario as destinatario, e.categoria as categoria, "
+         + "min(e.dataHora) as inicio, count(e) as itens "
+         + "from EmailLog e where e.status = :status group by e.destinatario, e.categoria")
+    List<JanelaDigest> resumirJanelas(@Param("status") EmailStatus status);
+
+    // Itens de uma janela, do mais antigo para o mais novo; SKIP LOCKED: duas instâncias
+    // fechando a mesma janela não geram dois digests com os mesmos itens
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<EmailLog> findByStatusAndDestinatarioAndCategoriaOrderByDataHoraAsc(EmailStatus status, String destinatario,
+                                                                           String categoria, Pageable pageable);
+
+    // Envios agendados (sendAt) que entram no horizonte em memória: só id, prioridade e horário
+    @Query("select e.id as id, e.prioridade as prioridade, e.proximaTentativa as proximaTentativa "
+         + "from EmailLog e where e.status = :status "
+         + "and e.proximaTentativa > :de and e.proximaTentativa <= :ate "
+         + "order by e.proximaTentativa asc, e.id asc")
+    List<Agendado> findAgendados(@Param("status") EmailStatus status,
+                                 @Param("de") LocalDateTime de,
+                                 @Param("ate") LocalDateTime ate,
+                                 Pageable pageable);
+
+    // Andamento dos envios de uma campanha (índice em campanhaId)
+    @Query("select e.status as status, count(e) as total from EmailLog e "
+         + "where e.campanhaId = :campanhaId group by e.status")
+    List<ContagemStatus> contarPorStatusDaCampanha(@Param("campanhaId") Long campanhaId);
+
+    // metadados do histórico; o corpo sai à parte em GET /api/email/{id}/body
+    interface ResumoEnvio {
+        Long getId();
+        String getDestinatario();
+        String getAssunto();
+        EmailStatus getStatus();
+        String getErro();
+        LocalDateTime getDataHora();
+    }
+
+    interface ContagemStatus {
+        EmailStatus getStatus();
+        long getTotal();
+    }
+
+    interface Agendado {
+        Long getId();
+        Prioridade getPrioridade();
+        LocalDateTime getProximaTentativa();
+    }
+
+    interface JanelaDigest {
+        String getDestinatario();
+        String getCategoria();
+        LocalDateTime getInicio();
+        long getItens();
+    }
 }
@@ -0,0 +1,9 @@
+package com.notificacao.repository;
+
+import com.notificacao.model.EmailTemplate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface EmailTemplateRepository extends JpaRepository<EmailTemplate, String> {
+}
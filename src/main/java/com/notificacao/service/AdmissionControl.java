@@ -0,0 +1,111 @@
+package com.notificacao.service;
+
+import com.notificacao.config.AdmissionProperties;
+import com.notificacao.model.Prioridade;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Controle de admissão na entrada da API: acima do high-water mark da prioridade
+ * (fila esperando worker ou envios SMTP em andamento) o request é recusado na hora
+ * com 429, em vez de empilhar trabalho até tudo estourar timeout.
+ *
+ * O Retry-After sugerido é o tempo para drenar o excesso na vazão medida (EWMA dos
+ * envios concluídos por segundo); com o circuito SMTP aberto, nunca menos que o tempo
+ * até a próxima sondagem.
+ */
+@Component
+public class AdmissionControl {
+
+    private final EmailDispatcher dispatcher;
+    private final SmtpCircuitBreaker circuitBreaker;
+    private final AdmissionProperties properties;
+
+    private final Map<Prioridade, Counter> admitidos = new EnumMap<>(Prioridade.class);
+    private final Map<Prioridade, Counter> recusadosFila = new EnumMap<>(Prioridade.class);
+    private final Map<Prioridade, Counter> recusadosEmVoo = new EnumMap<>(Prioridade.class);
+    private final Counter recusadosShutdown;
+
+    // vazão estimada (envios/s); atualizada só pelo @Scheduled
+    private volatile double vazao;
+    private long ultimoConcluidos;
+    private long ultimaAmostra = System.nanoTime();
+
+    public AdmissionControl(EmailDispatcher dispatcher,
+                            SmtpCircuitBreaker circuitBreaker,
+                            AdmissionProperties properties,
+                            MeterRegistry registry) {
+        this.dispatcher = dispatcher;
+        this.circuitBreaker = circuitBreaker;
+        this.properties = properties;
+        for (Prioridade p : Prioridade.values()) {
+            admitidos.put(p, Counter.builder("mailnotify.admission.admitted")
+                    .tag("priority", p.name()).register(registry));
+            recusadosFila.put(p, Counter.builder("mailnotify.admission.rejected")
+                    .tag("priority", p.name()).tag("reason", "queue").register(registry));
+            recusadosEmVoo.put(p, Counter.builder("mailnotify.admission.rejected")
+                    .tag("priority", p.name()).tag("reason", "inflight").register(registry));
+        }
+        this.recusadosShutdown = Counter.builder("mailnotify.admission.rejected")
+                .tag("priority", "ANY").tag("reason", "shutdown").register(registry);
+    }
+
+    /**
+     * Decide se um envio da prioridade pode entrar.
+     *
+     * @return 0 se admitido; senão, os segundos sugeridos para o Retry-After
+     */
+    public long admitir(Prioridade prioridade) {
+        if (!dispatcher.aceitando()) {
+            // drenando para desligar: o cliente deve tentar de novo (outra instância ou após o restart)
+            recusadosShutdown.increment();
+            return Math.max(1, properties.getMaxRetryAfterSeconds());
+        }
+        Prioridade p = prioridade != null ? prioridade : Prioridade.NORMAL;
+        AdmissionProperties.Limite limite = properties.getLimits().get(p);
+        if (!properties.isEnabled() || limite == null) {
+            admitidos.get(p).increment();
+            return 0;
+        }
+
+        int fila = dispatcher.tamanhoFila(p);
+        if (limite.getQueueHighWater() > 0 && fila >= limite.getQueueHighWater()) {
+            recusadosFila.get(p).increment();
+            return retryAfter(fila - limite.getQueueHighWater() + 1);
+        }
+        int emVoo = dispatcher.enviando();
+        if (limite.getInflightHighWater() > 0 && emVoo >= limite.getInflightHighWater()) {
+            recusadosEmVoo.get(p).increment();
+            return retryAfter(emVoo - limite.getInflightHighWater() + 1);
+        }
+        admitidos.get(p).increment();
+        return 0;
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void amostrarVazao() {
+        long agora = System.nanoTime();
+        long concluidos = dispatcher.concluidos();
+        double segundos = (agora - ultimaAmostra) / 1e9;
+        if (segundos > 0) {
+            double instantanea = (concluidos - ultimoConcluidos) / segundos;
+            vazao = 0.7 * vazao + 0.3 * instantanea;
+        }
+        ultimoConcluidos = concluidos;
+        ultimaAmostra = agora;
+    }
+
+    private long retryAfter(int excesso) {
+        long maximo = Math.max(1, properties.getMaxRetryAfterSeconds());
+        double taxa = vazao;
+        long segundos = taxa > 0.01 ? (long) Math.ceil(excesso / taxa) : maximo;
+        long circuito = (circuitBreaker.msAteSondar() + 999) / 1000;
+        return Math.min(maximo, Math.max(1, Math.max(segundos, circuito)));
+    }
+}
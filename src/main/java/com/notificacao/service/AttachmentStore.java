@@ -0,0 +1,289 @@
+package com.notificacao.service;
+
+import com.notificacao.model.Anexo;
+import com.notificacao.repository.AnexoRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import static com.notificacao.model.EmailStatus.PENDING;
+import static com.notificacao.model.EmailStatus.RETRYING;
+import static com.notificacao.model.EmailStatus.SENDING;
+
+/**
+ * Anexos em disco, endereçados por SHA-256.
+ *
+ * O upload é copiado em blocos para um arquivo de spool enquanto o hash é calculado;
+ * se o conteúdo já existir, o spool é descartado (dedupe). No envio o arquivo entra
+ * na MimeMessage como fonte de stream: o base64 é gerado direto do disco para o
+ * socket SMTP, sem o arquivo inteiro em byte[] no heap.
+ *
+ * Com várias instâncias o diretório precisa ser compartilhado (NFS/EFS, bucket montado):
+ * o upload cai numa instância e o envio em qualquer outra. O padrão no tmpdir local serve
+ * para desenvolvimento (com aviso no log); com mailnotify.storage.require-shared-dirs
+ * (perfil prod) ele impede a subida.
+ *
+ * GC: apaga anexos não vistos há {@code carenciaMs} que nenhum envio pendente referencia.
+ * O arquivo vai para uma lápide antes de a linha ser apagada e volta se a linha foi
+ * renovada no meio (upload ou envio concorrente), então linha e arquivo nunca se separam.
+ */
+@Service
+public class AttachmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(AttachmentStore.class);
+
+    private static final Pattern ID_VALIDO = Pattern.compile("[0-9a-f]{64}");
+    private static final int BUFFER = 64 * 1024;
+    private static final List<Integer> ATIVOS = List.of(PENDING.getCodigo(), RETRYING.getCodigo(), SENDING.getCodigo());
+
+    /** Anexo pronto para a MimeMessage: nome exibido + arquivo em disco. */
+    public record Arquivo(String nome, Path caminho, String contentType, long tamanho) {}
+
+    private final AnexoRepository anexoRepository;
+    private final Path diretorio;
+    private final long maxBytes;
+    private final long validadeMs;
+    private final long carenciaMs;
+    private final int loteGc;
+
+    // id -> quando vistoEm foi renovado (epoch ms): lotes com o mesmo anexo não martelam a linha
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Long> tocados;
+
+    private final Counter apagados;
+
+    public AttachmentStore(AnexoRepository anexoRepository,
+                           MeterRegistry registry,
+                           @Value("${mailnotify.attachments.dir:${java.io.tmpdir}/mailnotify-attachments}") String diretorio,
+                           @Value("${mailnotify.attachments.max-size:20MB}") DataSize maxBytes,
+                           @Value("${mailnotify.attachments.touch-cache-size:10000}") int tamanhoCache,
+                           @Value("${mailnotify.attachments.touch-ttl-ms:3600000}") long validadeMs,
+                           @Value("${mailnotify.attachments.gc-grace-ms:604800000}") long carenciaMs,
+                           @Value("${mailnotify.attachments.gc-batch-size:500}") int loteGc,
+                           @Value("${mailnotify.storage.require-shared-dirs:false}") boolean exigirCompartilhado)
+            throws IOException {
+        this.anexoRepository = anexoRepository;
+        this.diretorio = Path.of(diretorio == null || diretorio.isBlank()
+                ? System.getProperty("java.io.tmpdir") + "/mailnotify-attachments" : diretorio);
+        if (this.diretorio.toAbsolutePath().startsWith(Path.of(System.getProperty("java.io.tmpdir")).toAbsolutePath())) {
+            // local (dev/teste) funciona; com várias instâncias o envio cai onde o arquivo não existe
+            if (exigirCompartilhado) {
+                throw new IllegalStateException("mailnotify.attachments.dir (" + this.diretorio + ") está no tmpdir local: "
+                        + "aponte para um diretório compartilhado por todas as instâncias (NFS/EFS, bucket montado)");
+            }
+            log.warn("mailnotify.attachments.dir ({}) está no tmpdir local: outras instâncias não verão os anexos", this.diretorio);
+        }
+        Files.createDirectories(this.diretorio.resolve("tmp"));
+        if (!Files.isWritable(this.diretorio)) {
+            throw new IllegalStateException("mailnotify.attachments.dir sem permissão de escrita: " + this.diretorio);
+        }
+        this.maxBytes = maxBytes.toBytes();
+        this.validadeMs = validadeMs;
+        // a carência cobre com folga o tempo em que um id fica no cache sem renovar o banco
+        this.carenciaMs = Math.max(carenciaMs, 2 * validadeMs);
+        this.loteGc = loteGc;
+        this.tocados = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> maisAntigo) {
+                return size() > tamanhoCache;
+            }
+        };
+        this.apagados = Counter.builder("mailnotify.attachments.gc.deleted")
+                .description("Anexos órfãos apagados pelo GC").register(registry);
+    }
+
+    /** Grava o conteúdo (ou reaproveita o idêntico já gravado). IllegalArgumentException acima do limite. */
+    public Anexo armazenar(InputStream in, String contentType) throws IOException {
+        Path spool = Files.createTempFile(diretorio.resolve("tmp"), "anexo-", ".part");
+        try {
+            MessageDigest sha256 = sha256();
+            long total = 0;
+            byte[] buffer = new byte[BUFFER];
+            try (OutputStream out = Files.newOutputStream(spool)) {
+                int lidos;
+                while ((lidos = in.read(buffer)) != -1) {
+                    total += lidos;
+                    if (total > maxBytes) {
+                        throw new IllegalArgumentException("anexo acima do limite de " + maxBytes + " bytes");
+                    }
+                    sha256.update(buffer, 0, lidos);
+                    out.write(buffer, 0, lidos);
+                }
+            }
+            String id = HexFormat.of().formatHex(sha256.digest());
+
+            // linha primeiro (upsert renova vistoEm e segura o GC), arquivo depois
+            anexoRepository.gravar(id, contentType != null && !contentType.isBlank() ? contentType : "application/octet-stream",
+                    total, LocalDateTime.now());
+            Path destino = caminho(id);
+            if (!Files.exists(destino)) {
+                Files.createDirectories(destino.getParent());
+                // o nome é o hash: se outra thread mover o mesmo conteúdo antes, tanto faz qual fica
+                Files.move(spool, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return anexoRepository.findById(id).orElseThrow();
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /**
+     * Resolve os anexos de um log (nome exibido → id). Lança IllegalArgumentException se algum
+     * id não existir ou se a soma passar do limite por mensagem.
+     */
+    public List<Arquivo> resolver(Map<String, String> anexos) {
+        List<Arquivo> arquivos = new ArrayList<>();
+        if (anexos == null || anexos.isEmpty()) {
+            return arquivos;
+        }
+        long total = 0;
+        for (Map.Entry<String, String> e : anexos.entrySet()) {
+            String id = e.getValue();
+            Anexo anexo = (id != null && ID_VALIDO.matcher(id).matches() ? anexoRepository.findById(id) : Optional.<Anexo>empty())
+                    .orElseThrow(() -> new IllegalArgumentException("anexo não encontrado: " + e.getKey()));
+            Path caminho = caminho(anexo.getId());
+            if (!Files.isReadable(caminho)) {
+                throw new IllegalArgumentException("arquivo do anexo ausente no disco: " + e.getKey());
+            }
+            total += anexo.getTamanho();
+            if (total > maxBytes) {
+                throw new IllegalArgumentException("anexos acima do limite de " + maxBytes + " bytes por e-mail");
+            }
+            arquivos.add(new Arquivo(e.getKey(), caminho, anexo.getContentType(), anexo.getTamanho()));
+        }
+        return arquivos;
+    }
+
+    /** Renova vistoEm dos anexos de um e-mail sendo registrado (ids vistos há menos de validadeMs não vão ao banco). */
+    public void tocar(Collection<String> ids) {
+        long agora = System.currentTimeMillis();
+        List<String> renovar = new ArrayList<>(ids.size());
+        lock.lock();
+        try {
+            for (String id : ids) {
+                Long visto = tocados.get(id);
+                if (visto == null || agora - visto >= validadeMs) {
+                    renovar.add(id);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (renovar.isEmpty()) {
+            return;
+        }
+        anexoRepository.tocar(renovar, LocalDateTime.now());
+        lock.lock();
+        try {
+            renovar.forEach(id -> tocados.put(id, agora));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${mailnotify.attachments.gc-interval-ms:3600000}",
+               initialDelayString = "${mailnotify.attachments.gc-interval-ms:3600000}")
+    public void coletarOrfaos() {
+        LocalDateTime limite = LocalDateTime.now().minus(Duration.ofMillis(carenciaMs));
+        long total = 0;
+        List<String> orfaos;
+        do {
+            orfaos = anexoRepository.orfaos(limite, ATIVOS, loteGc);
+            for (String id : orfaos) {
+                if (apagar(id, limite)) {
+                    total++;
+                }
+            }
+        } while (orfaos.size() == loteGc);
+        total += limparSpool(limite);
+        if (total > 0) {
+            apagados.increment(total);
+            log.info("GC de anexos: {} anexos/spools órfãos apagados.", total);
+        }
+    }
+
+    private boolean apagar(String id, LocalDateTime limite) {
+        Path arquivo = caminho(id);
+        Path lapide = diretorio.resolve("tmp").resolve(id + ".gc");
+        try {
+            boolean movido = Files.exists(arquivo);
+            if (movido) {
+                Files.move(arquivo, lapide, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            if (anexoRepository.apagarSeOrfao(id, limite, ATIVOS) == 1) {
+                Files.deleteIfExists(lapide);
+                return true;
+            }
+            // renovado no meio: devolve o arquivo (se um upload já não o repôs)
+            if (movido && !Files.exists(arquivo)) {
+                Files.move(lapide, arquivo, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.deleteIfExists(lapide);
+            }
+        } catch (IOException ex) {
+            log.warn("GC de anexos: falha ao apagar {}", id, ex);
+        }
+        return false;
+    }
+
+    /** Arquivo novo no spool (tmp/ do diretório de anexos); se ficar para trás, o GC do spool apaga. */
+    public Path spoolTemporario(String prefixo) throws IOException {
+        return Files.createTempFile(diretorio.resolve("tmp"), prefixo, ".part");
+    }
+
+    // uploads interrompidos (processo morto no meio da cópia) deixam .part para trás
+    private long limparSpool(LocalDateTime limite) {
+        long removidos = 0;
+        long limiteMs = System.currentTimeMillis() - carenciaMs;
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(diretorio.resolve("tmp"), "*.part")) {
+            for (Path arquivo : arquivos) {
+                if (Files.getLastModifiedTime(arquivo).toMillis() < limiteMs && Files.deleteIfExists(arquivo)) {
+                    removidos++;
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("GC de anexos: falha ao limpar o spool", ex);
+        }
+        return removidos;
+    }
+
+    // dois níveis (ab/abcdef...) para não juntar milhões de arquivos num diretório só
+    private Path caminho(String id) {
+        return diretorio.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
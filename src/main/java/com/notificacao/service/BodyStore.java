@@ -0,0 +1,195 @@
+package com.notificacao.service;
+
+import com.notificacao.model.CompressedTextConverter;
+import com.notificacao.model.CorpoEmail;
+import com.notificacao.model.EmailLog;
+import com.notificacao.repository.CorpoEmailRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Corpos de e-mail deduplicados por conteúdo (tabela corpo_email, chave = SHA-256).
+ *
+ * Gravar: calcula o hash e, se ele foi visto há menos de {@code validadeMs}, não vai ao
+ * banco; senão faz um upsert que grava o corpo ou só renova {@code vistoEm}. O hash entra
+ * no cache depois do commit, então um rollback nunca deixa o cache apontando para nada.
+ *
+ * GC: apaga corpos sem referência em email_log e não vistos há {@code carenciaMs}. A
+ * carência é bem maior que a validade do cache, então um hash ainda servido pelo cache
+ * nunca é apagado antes de o log que o referencia ser gravado.
+ */
+@Service
+public class BodyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BodyStore.class);
+
+    private final CorpoEmailRepository corpoEmailRepository;
+    private final CompressedTextConverter codec;
+    private final long validadeMs;
+    private final long carenciaMs;
+    private final int loteGc;
+    private final int maxLeituraBytes;
+
+    // hash -> quando foi gravado/renovado no banco (epoch ms); LRU
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Long> vistos;
+    // hash -> texto dos corpos lidos por último (fan-out lê o mesmo corpo milhares de vezes)
+    private final LinkedHashMap<String, String> lidos;
+
+    private final Counter hits;
+    private final Counter gravacoes;
+    private final Counter apagados;
+
+    public BodyStore(CorpoEmailRepository corpoEmailRepository,
+                     CompressedTextConverter codec,
+                     MeterRegistry registry,
+                     @Value("${mailnotify.body-store.cache-size:10000}") int tamanhoCache,
+                     @Value("${mailnotify.body-store.read-cache-size:32}") int tamanhoCacheLeitura,
+                     @Value("${mailnotify.body-store.read-cache-max-bytes:65536}") int maxLeituraBytes,
+                     @Value("${mailnotify.body-store.cache-ttl-ms:3600000}") long validadeMs,
+                     @Value("${mailnotify.body-store.gc-grace-ms:86400000}") long carenciaMs,
+                     @Value("${mailnotify.body-store.gc-batch-size:1000}") int loteGc) {
+        this.corpoEmailRepository = corpoEmailRepository;
+        this.codec = codec;
+        this.validadeMs = validadeMs;
+        this.carenciaMs = Math.max(carenciaMs, 2 * validadeMs);
+        this.loteGc = loteGc;
+        this.maxLeituraBytes = maxLeituraBytes;
+        this.vistos = lru(tamanhoCache);
+        this.lidos = lru(tamanhoCacheLeitura);
+        this.hits = Counter.builder("mailnotify.bodystore.writes").tag("result", "cached").register(registry);
+        this.gravacoes = Counter.builder("mailnotify.bodystore.writes").tag("result", "upsert").register(registry);
+        this.apagados = Counter.builder("mailnotify.bodystore.gc.deleted")
+                .description("Corpos órfãos apagados pelo GC").register(registry);
+    }
+
+    /** Garante o corpo no banco e devolve o hash para EmailLog.corpoHash (null se não houver corpo). */
+    public String armazenar(String conteudo) {
+        if (conteudo == null) {
+            return null;
+        }
+        byte[] bytes = conteudo.getBytes(StandardCharsets.UTF_8);
+        String hash = HexFormat.of().formatHex(sha256().digest(bytes));
+        long agora = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            Long visto = vistos.get(hash);
+            if (visto != null && agora - visto < validadeMs) {
+                hits.increment();
+                return hash;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        corpoEmailRepository.gravar(hash, codec.convertToDatabaseColumn(conteudo), bytes.length, LocalDateTime.now());
+        gravacoes.increment();
+        lembrarAposCommit(hash, agora);
+        return hash;
+    }
+
+    /**
+     * Corpo pronto do log: o da tabela de corpos ou, em logs anteriores à deduplicação, o
+     * da própria coluna conteudo. IllegalArgumentException se a referência não existir.
+     */
+    public String conteudo(EmailLog emailLog) {
+        String hash = emailLog.getCorpoHash();
+        if (hash == null) {
+            return emailLog.getConteudo();
+        }
+        lock.lock();
+        try {
+            String texto = lidos.get(hash);
+            if (texto != null) {
+                return texto;
+            }
+        } finally {
+            lock.unlock();
+        }
+        CorpoEmail corpo = corpoEmailRepository.findById(hash)
+                .orElseThrow(() -> new IllegalArgumentException("corpo do e-mail não encontrado: " + hash));
+        if (corpo.getTamanho() <= maxLeituraBytes) {
+            lock.lock();
+            try {
+                lidos.put(hash, corpo.getConteudo());
+            } finally {
+                lock.unlock();
+            }
+        }
+        return corpo.getConteudo();
+    }
+
+    @Scheduled(fixedDelayString = "${mailnotify.body-store.gc-interval-ms:3600000}",
+               initialDelayString = "${mailnotify.body-store.gc-interval-ms:3600000}")
+    public void coletarOrfaos() {
+        LocalDateTime limite = LocalDateTime.now().minus(Duration.ofMillis(carenciaMs));
+        long total = 0;
+        int apagadosLote;
+        do {
+            // lotes pequenos, cada um na sua transação: não segura lock em email_log por muito tempo
+            apagadosLote = corpoEmailRepository.apagarOrfaos(limite, loteGc);
+            total += apagadosLote;
+        } while (apagadosLote == loteGc);
+        if (total > 0) {
+            apagados.increment(total);
+            log.info("GC de corpos: {} corpos órfãos apagados.", total);
+        }
+    }
+
+    private void lembrarAposCommit(String hash, long quando) {
+        Runnable lembrar = () -> {
+            lock.lock();
+            try {
+                vistos.put(hash, quando);
+            } finally {
+                lock.unlock();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    lembrar.run();
+                }
+            });
+        } else {
+            lembrar.run();
+        }
+    }
+
+    private static <V> LinkedHashMap<String, V> lru(int tamanho) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> maisAntigo) {
+                return size() > tamanho;
+            }
+        };
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.notificacao.service;
+
+import com.notificacao.Dto.SendEmailRequest;
+import com.notificacao.model.Campanha;
+import com.notificacao.model.EmailLog;
+import com.notificacao.model.Prioridade;
+import com.notificacao.repository.CampanhaRepository;
+import com.notificacao.repository.EmailLogRepository;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.notificacao.model.EmailStatus.PENDING;
+
+/**
+ * Campanhas por CSV: o upload é copiado (em streaming) para um arquivo de spool e o
+ * request volta na hora com o id do job. Um worker lê o arquivo registro a registro,
+ * monta um log de template por linha (colunas = variáveis) e grava em blocos com
+ * INSERT em batch JDBC, atualizando o progresso a cada bloco.
+ *
+ * O heap fica limitado a um bloco de logs, qualquer que seja o tamanho do arquivo; os
+ * logs entram como PENDING e o dispatcher os consome no ritmo dele (fila cheia = polling).
+ *
+ * Retomada: cada bloco grava, na mesma transação, quantos registros do CSV já foram
+ * consumidos (Campanha.linhas) e renova o lease da instância dona. No shutdown o import
+ * para entre dois registros e solta o lease; se o processo morrer, o lease vence. Em
+ * ambos os casos uma instância (esta, ao subir, ou outra) reivindica o import e continua
+ * do spool a partir do último bloco commitado — sem duplicar nem perder linhas. Spool
+ * ausente = FAILED com o total já importado. Por isso, em produção, o spool fica fora do
+ * tmpdir e, com várias instâncias, num diretório compartilhado (ver require-shared-dirs).
+ */
+@Service
+public class CampaignService {
+
+    private static final Logger log = LoggerFactory.getLogger(CampaignService.class);
+
+    private static final Set<String> COLUNAS_DESTINATARIO = Set.of("destinatario", "email");
+
+    private final CampanhaRepository campanhaRepository;
+    private final EmailLogRepository emailLogRepository;
+    private final EmailDispatcher dispatcher;
+    private final TemplateService templateService;
+    private final Validator validator;
+    private final TransactionTemplate transacao;
+    private final Path spool;
+    private final int tamanhoBatch;
+    private final long leaseMs;
+    private final long prazoEncerramentoMs;
+
+    // imports já na fila do executor desta instância (não enfileira de novo na verificação)
+    private final Set<Long> agendadas = ConcurrentHashMap.newKeySet();
+    private volatile boolean encerrando;
+
+    // um import por vez: o gargalo é o banco, não a CPU
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "campaign-import");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public CampaignService(CampanhaRepository campanhaRepository,
+                           EmailLogRepository emailLogRepository,
+                           EmailDispatcher dispatcher,
+                           TemplateService templateService,
+                           Validator validator,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${mailnotify.campaign.spool-dir:${java.io.tmpdir}/mailnotify-campaigns}") String spool,
+                           @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int tamanhoBatch,
+                           @Value("${mailnotify.campaign.lease-ms:300000}") long leaseMs,
+                           @Value("${mailnotify.campaign.shutdown-wait-ms:10000}") long prazoEncerramentoMs,
+                           @Value("${mailnotify.storage.require-shared-dirs:false}") boolean exigirCompartilhado)
+            throws IOException {
+        this.campanhaRepository = campanhaRepository;
+        this.emailLogRepository = emailLogRepository;
+        this.dispatcher = dispatcher;
+        this.templateService = templateService;
+        this.validator = validator;
+        this.transacao = new TransactionTemplate(transactionManager);
+        this.spool = Path.of(spool == null || spool.isBlank()
+                ? System.getProperty("java.io.tmpdir") + "/mailnotify-campaigns" : spool);
+        if (this.spool.toAbsolutePath().startsWith(Path.of(System.getProperty("java.io.tmpdir")).toAbsolutePath())) {
+            if (exigirCompartilhado) {
+                throw new IllegalStateException("mailnotify.campaign.spool-dir (" + this.spool + ") está no tmpdir local: "
+                        + "aponte para um diretório persistente e compartilhado (imports interrompidos são retomados dele)");
+            }
+            log.warn("mailnotify.campaign.spool-dir ({}) está no tmpdir: um restart pode perder imports em andamento", this.spool);
+        }
+        Files.createDirectories(this.spool);
+        if (!Files.isWritable(this.spool)) {
+            throw new IllegalStateException("mailnotify.campaign.spool-dir sem permissão de escrita: " + this.spool);
+        }
+        this.tamanhoBatch = tamanhoBatch;
+        this.leaseMs = leaseMs;
+        this.prazoEncerramentoMs = prazoEncerramentoMs;
+    }
+
+    /**
+     * Copia o CSV para o spool e agenda o import. O cabeçalho deve ter uma coluna
+     * {@code destinatario} (ou {@code email}); as demais viram variáveis do template.
+     * Lança IllegalArgumentException se o template não existir.
+     */
+    public Campanha importar(InputStream csv, String template, Prioridade prioridade, char separador)
+            throws IOException {
+        if (!templateService.existe(template)) {
+            throw new IllegalArgumentException("template não encontrado: " + template);
+        }
+        Path arquivo = Files.createTempFile(spool, "campanha-", ".csv");
+        try {
+            Files.copy(csv, arquivo, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            Files.deleteIfExists(arquivo);
+            throw ex;
+        }
+
+        Campanha campanha = new Campanha();
+        campanha.setTemplate(template);
+        campanha.setPrioridade(prioridade != null ? prioridade : Prioridade.BULK);
+        campanha.setStatus(Campanha.IMPORTING);
+        campanha.setArquivo(arquivo.getFileName().toString());
+        campanha.setSeparador(String.valueOf(separador));
+        campanha.setDono(dispatcher.getNoId());
+        campanha.setLeaseAte(LocalDateTime.now().plusNanos(leaseMs * 1_000_000));
+        Campanha salva = campanhaRepository.save(campanha);
+
+        agendar(salva.getId());
+        return salva;
+    }
+
+    /**
+     * Start (e periodicamente): retoma os imports IMPORTING sem dono vivo — deixados por
+     * um shutdown ou por um processo que caiu.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${mailnotify.campaign.resume-check-ms:60000}",
+               initialDelayString = "${mailnotify.campaign.resume-check-ms:60000}")
+    public void retomar() {
+        if (encerrando) {
+            return;
+        }
+        for (Long id : campanhaRepository.findImportsSemDono(LocalDateTime.now())) {
+            agendar(id);
+        }
+    }
+
+    private void agendar(Long campanhaId) {
+        if (agendadas.add(campanhaId)) {
+            executor.submit(() -> {
+                try {
+                    processar(campanhaId);
+                } finally {
+                    agendadas.remove(campanhaId);
+                }
+            });
+        }
+    }
+
+    public Optional<Campanha> buscar(Long id) {
+        return campanhaRepository.findById(id);
+    }
+
+    /** Quantos logs da campanha estão em cada status (andamento da entrega). */
+    public Map<String, Long> envios(Long id) {
+        Map<String, Long> porStatus = new LinkedHashMap<>();
+        for (EmailLogRepository.ContagemStatus c : emailLogRepository.contarPorStatusDaCampanha(id)) {
+            porStatus.put(String.valueOf(c.getStatus()), c.getTotal());
+        }
+        return porStatus;
+    }
+
+    private void processar(Long campanhaId) {
+        String dono = dispatcher.getNoId();
+        // um import de fila que esperou além do lease pode ter sido assumido por outra instância
+        if (encerrando || campanhaRepository.reivindicar(campanhaId, dono, LocalDateTime.now(), leaseAte()) == 0) {
+            return;
+        }
+        Campanha campanha = campanhaRepository.findById(campanhaId).orElse(null);
+        if (campanha == null) {
+            return;
+        }
+        Path arquivo = campanha.getArquivo() != null ? spool.resolve(campanha.getArquivo()) : null;
+        if (arquivo == null || !Files.isReadable(arquivo)) {
+            log.warn("Import da campanha {} sem spool para retomar; {} logs já importados", campanhaId, campanha.getImportadas());
+            campanhaRepository.concluir(campanhaId, dono, Campanha.FAILED,
+                    "spool do import ausente; interrompido após " + campanha.getImportadas() + " logs importados",
+                    LocalDateTime.now());
+            return;
+        }
+        char separador = campanha.getSeparador() != null && !campanha.getSeparador().isEmpty()
+                ? campanha.getSeparador().charAt(0) : ',';
+        String template = campanha.getTemplate();
+        Prioridade prioridade = campanha.getPrioridade();
+
+        Progresso progresso = new Progresso(campanha);
+        boolean apagarSpool = true;
+        try (BufferedReader reader = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+            CsvReader csv = new CsvReader(reader, separador);
+            List<String> cabecalho = csv.proximo();
+            if (cabecalho == null) {
+                throw new IllegalArgumentException("arquivo vazio");
+            }
+            int colunaDestinatario = -1;
+            for (int i = 0; i < cabecalho.size(); i++) {
+                cabecalho.set(i, cabecalho.get(i).trim());
+                if (colunaDestinatario < 0 && COLUNAS_DESTINATARIO.contains(cabecalho.get(i).toLowerCase(Locale.ROOT))) {
+                    colunaDestinatario = i;
+                }
+            }
+            if (colunaDestinatario < 0) {
+                throw new IllegalArgumentException("cabeçalho sem coluna destinatario/email");
+            }
+
+            // retomada: pula os registros já commitados
+            for (long i = 0; i < progresso.linhas; i++) {
+                if (csv.proximo() == null) {
+                    break;
+                }
+            }
+            if (progresso.linhas > 0) {
+                log.info("Retomando o import da campanha {} após {} registros", campanhaId, progresso.linhas);
+            }
+
+            List<EmailLog> bloco = new ArrayList<>(tamanhoBatch);
+            List<String> campos;
+            long numeroLinha = 1 + progresso.linhas;
+            while ((campos = csv.proximo()) != null) {
+                if (encerrando) {
+                    throw new Encerrando();
+                }
+                numeroLinha++;
+                progresso.lidas++;
+                try {
+                    bloco.add(novoLog(campanhaId, cabecalho, campos, colunaDestinatario, template, prioridade));
+                } catch (IllegalArgumentException ex) {
+                    progresso.erro("linha " + numeroLinha + ": " + ex.getMessage());
+                }
+                if (bloco.size() == tamanhoBatch) {
+                    gravar(campanhaId, dono, bloco, progresso);
+                    bloco = new ArrayList<>(tamanhoBatch);
+                }
+            }
+            gravar(campanhaId, dono, bloco, progresso);
+            campanhaRepository.concluir(campanhaId, dono, Campanha.DONE, progresso.ultimoErro, LocalDateTime.now());
+        } catch (Encerrando ex) {
+            // o bloco em memória não foi commitado: quem retomar relê essas linhas do spool
+            apagarSpool = false;
+            campanhaRepository.liberar(campanhaId, dono);
+            log.info("Import da campanha {} interrompido pelo shutdown após {} registros; será retomado",
+                    campanhaId, progresso.linhas);
+        } catch (LeasePerdido ex) {
+            apagarSpool = false;
+            log.warn("Import da campanha {} assumido por outra instância; abandonando", campanhaId);
+        } catch (Exception ex) {
+            if (encerrando) {
+                // interrompido pelo shutdownNow no meio de um bloco: o rollback deixa o ponto de retomada intacto
+                apagarSpool = false;
+                log.info("Import da campanha {} interrompido pelo shutdown; será retomado", campanhaId);
+                return;
+            }
+            log.warn("Import da campanha {} falhou: {}", campanhaId, ex.getMessage());
+            campanhaRepository.concluir(campanhaId, dono, Campanha.FAILED,
+                    truncar(ex.getMessage() + " (após " + progresso.importadas + " logs importados)"), LocalDateTime.now());
+        } finally {
+            if (apagarSpool) {
+                try {
+                    Files.deleteIfExists(arquivo);
+                } catch (IOException ex) {
+                    log.warn("Não foi possível apagar o spool {}", arquivo);
+                }
+            }
+        }
+    }
+
+    private EmailLog novoLog(Long campanhaId, List<String> cabecalho, List<String> campos, int colunaDestinatario,
+                             String template, Prioridade prioridade) {
+        Map<String, String> variaveis = new HashMap<>();
+        for (int i = 0; i < cabecalho.size() && i < campos.size(); i++) {
+            if (i != colunaDestinatario) {
+                variaveis.put(cabecalho.get(i), campos.get(i));
+            }
+        }
+        String destinatario = colunaDestinatario < campos.size() ? campos.get(colunaDestinatario).trim() : "";
+
+        // mesma validação do /send (e-mail bem formado, obrigatório)
+        SendEmailRequest req = new SendEmailRequest();
+        req.setDestinatario(destinatario);
+        req.setTemplate(template);
+        Set<ConstraintViolation<SendEmailRequest>> violacoes = validator.validate(req);
+        if (!violacoes.isEmpty()) {
+            ConstraintViolation<SendEmailRequest> v = violacoes.iterator().next();
+            throw new IllegalArgumentException(v.getPropertyPath() + ": " + v.getMessage());
+        }
+
+        String assunto = templateService.renderizarAssunto(template, variaveis);
+        if (assunto == null || assunto.isBlank()) {
+            throw new IllegalArgumentException("template sem assunto");
+        }
+
+        EmailLog emailLog = new EmailLog();
+        emailLog.setDestinatario(destinatario);
+        emailLog.setAssunto(assunto);
+        emailLog.setTemplateId(template);
+        emailLog.setTemplateVersao(templateService.versao(template));
+        emailLog.setVariaveis(variaveis);
+        emailLog.setStatus(PENDING);
+        emailLog.setPrioridade(prioridade);
+        emailLog.setCampanhaId(campanhaId);
+        return emailLog;
+    }
+
+    // um bloco = uma transação: INSERT em batch + progresso (ponto de retomada) + lease;
+    // enfileira depois do commit. Lease perdido = rollback, o bloco fica para o novo dono
+    private void gravar(Long campanhaId, String dono, List<EmailLog> bloco, Progresso progresso) {
+        long linhas = progresso.linhas + progresso.lidas;
+        transacao.executeWithoutResult(s -> {
+            if (!bloco.isEmpty()) {
+                emailLogRepository.saveAll(bloco);
+                emailLogRepository.flush();
+                dispatcher.enfileirarAposCommit(bloco);
+            }
+            if (campanhaRepository.atualizarProgresso(campanhaId, dono, linhas, progresso.importadas + bloco.size(),
+                    progresso.erros, progresso.ultimoErro, leaseAte()) == 0) {
+                throw new LeasePerdido();
+            }
+        });
+        progresso.linhas = linhas;
+        progresso.lidas = 0;
+        progresso.importadas += bloco.size();
+    }
+
+    private LocalDateTime leaseAte() {
+        return LocalDateTime.now().plusNanos(leaseMs * 1_000_000);
+    }
+
+    private static String truncar(String mensagem) {
+        return mensagem.length() > 500 ? mensagem.substring(0, 500) : mensagem;
+    }
+
+    // para entre dois registros e solta o lease; espera o bloco em andamento commitar
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        encerrando = true;
+        executor.shutdown();
+        if (!executor.awaitTermination(prazoEncerramentoMs, TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class Progresso {
+        // commitados (retomada) e lidos desde o último bloco
+        long linhas;
+        long lidas;
+        long importadas;
+        long erros;
+        String ultimoErro;
+
+        Progresso(Campanha campanha) {
+            this.linhas = campanha.getLinhas();
+            this.importadas = campanha.getImportadas();
+            this.erros = campanha.getErros();
+            this.ultimoErro = campanha.getUltimoErro();
+        }
+
+        void erro(String mensagem) {
+            erros++;
+            ultimoErro = truncar(mensagem);
+        }
+    }
+
+    // shutdown no meio do import
+    private static final class Encerrando extends RuntimeException {
+        Encerrando() {
+            super(null, null, false, false);
+        }
+    }
+
+    // atualizarProgresso não achou o lease desta instância
+    private static final class LeasePerdido extends RuntimeException {
+        LeasePerdido() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.notificacao.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template já parseado: literais e nomes de variáveis intercalados
+ * ({@code literais[0] var[0] literais[1] var[1] ... literais[n]}).
+ *
+ * O parse acontece uma vez; renderizar é uma única passada num StringBuilder
+ * pré-dimensionado, sem regex nem String intermediária por placeholder.
+ */
+final class CompiledTemplate {
+
+    private static final String ABRE = "{{";
+    private static final String FECHA = "}}";
+
+    private final String[] literais;
+    private final String[] variaveis;
+    private final int tamanhoLiterais;
+
+    private CompiledTemplate(String[] literais, String[] variaveis) {
+        this.literais = literais;
+        this.variaveis = variaveis;
+        int total = 0;
+        for (String literal : literais) {
+            total += literal.length();
+        }
+        this.tamanhoLiterais = total;
+    }
+
+    static CompiledTemplate compilar(String fonte) {
+        if (fonte == null) {
+            return null;
+        }
+        List<String> literais = new ArrayList<>();
+        List<String> variaveis = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int ini = fonte.indexOf(ABRE, pos);
+            int fim = ini < 0 ? -1 : fonte.indexOf(FECHA, ini + ABRE.length());
+            if (fim < 0) {
+                literais.add(fonte.substring(pos));
+                break;
+            }
+            literais.add(fonte.substring(pos, ini));
+            variaveis.add(fonte.substring(ini + ABRE.length(), fim).trim());
+            pos = fim + FECHA.length();
+        }
+        return new CompiledTemplate(literais.toArray(String[]::new), variaveis.toArray(String[]::new));
+    }
+
+    /** Variáveis ausentes viram string vazia; {@code html} escapa os valores. */
+    String renderizar(Map<String, String> valores, boolean html) {
+        StringBuilder sb = new StringBuilder(tamanhoLiterais + 16 * variaveis.length);
+        for (int i = 0; i < variaveis.length; i++) {
+            sb.append(literais[i]);
+            String valor = valores != null ? valores.get(variaveis[i]) : null;
+            if (valor != null) {
+                if (html) {
+                    escaparHtml(valor, sb);
+                } else {
+                    sb.append(valor);
+                }
+            }
+        }
+        sb.append(literais[variaveis.length]);
+        return sb.toString();
+    }
+
+    private static void escaparHtml(String valor, StringBuilder sb) {
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '&' -> sb.append("&amp;");
+                case '"' -> sb.append("&quot;");
+                case '\'' -> sb.append("&#39;");
+                default -> sb.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.notificacao.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Leitor de CSV (RFC 4180) em streaming: um registro por chamada, sem carregar o arquivo.
+ * Aceita campos entre aspas com separador, quebra de linha e aspas escapadas (""), LF ou
+ * CRLF no fim do registro e o BOM que o Excel põe no início do arquivo (descartado).
+ * Registros com número de campos diferente do cabeçalho são devolvidos como estão.
+ */
+final class CsvReader {
+
+    private static final int NADA = -2;
+
+    private final Reader in;
+    private final char separador;
+    private int aFrente = NADA;
+    private boolean inicio = true;
+
+    /** {@code in} deve ser bufferizado (BufferedReader): a leitura é caractere a caractere. */
+    CsvReader(Reader in, char separador) {
+        this.in = in;
+        this.separador = separador;
+    }
+
+    /** Próximo registro, ou null no fim do arquivo. Linhas em branco são puladas. */
+    List<String> proximo() throws IOException {
+        if (inicio) {
+            inicio = false;
+            int c = ler();
+            if (c != '\uFEFF') {
+                aFrente = c;
+            }
+        }
+        while (true) {
+            List<String> campos = lerRegistro();
+            if (campos == null || campos.size() > 1 || !campos.get(0).isEmpty()) {
+                return campos;
+            }
+        }
+    }
+
+    private List<String> lerRegistro() throws IOException {
+        int c = ler();
+        if (c == -1) {
+            return null;
+        }
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean aspas = false;
+        while (c != -1) {
+            char ch = (char) c;
+            if (aspas) {
+                if (ch != '"') {
+                    campo.append(ch);
+                } else {
+                    int prox = ler();
+                    if (prox == '"') {
+                        campo.append('"');
+                    } else {
+                        aspas = false;
+                        aFrente = prox;
+                    }
+                }
+            } else if (ch == '"' && campo.isEmpty()) {
+                aspas = true;
+            } else if (ch == separador) {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else if (ch == '\n') {
+                break;
+            } else if (ch == '\r') {
+                int prox = ler();
+                if (prox != '\n') {
+                    aFrente = prox;
+                }
+                break;
+            } else {
+                campo.append(ch);
+            }
+            c = ler();
+        }
+        campos.add(campo.toString());
+        return campos;
+    }
+
+    private int ler() throws IOException {
+        if (aFrente != NADA) {
+            int c = aFrente;
+            aFrente = NADA;
+            return c;
+        }
+        return in.read();
+    }
+}
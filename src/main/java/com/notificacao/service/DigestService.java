@@ -0,0 +1,175 @@
+package com.notificacao.service;
+
+import com.notificacao.config.DigestProperties;
+import com.notificacao.model.EmailLog;
+import com.notificacao.model.Prioridade;
+import com.notificacao.repository.EmailLogRepository;
+import com.notificacao.repository.EmailLogRepository.JanelaDigest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.notificacao.model.EmailStatus.*;
+
+/**
+ * Digest por categoria: e-mails de uma categoria configurada ficam BUFFERED e,
+ * quando a janela do (destinatário, categoria) fecha — tempo ou tamanho —, viram
+ * um único e-mail. Os logs originais passam a DIGESTED e apontam para o log do digest.
+ *
+ * O buffer é a própria tabela (sobrevive a restart); o polling só olha linhas BUFFERED.
+ */
+@Service
+public class DigestService {
+
+    private static final Logger log = LoggerFactory.getLogger(DigestService.class);
+
+    // categoria removida da configuração com itens ainda no buffer: fecha tudo de uma vez
+    private static final int MAX_SEM_CONFIG = 100;
+
+    private final EmailLogRepository emailLogRepository;
+    private final EmailDispatcher dispatcher;
+    private final TemplateService templateService;
+    private final BodyStore corpos;
+    private final DigestProperties properties;
+    private final TransactionTemplate transacao;
+
+    private final Counter digests;
+    private final Counter agrupados;
+
+    public DigestService(EmailLogRepository emailLogRepository,
+                         EmailDispatcher dispatcher,
+                         TemplateService templateService,
+                         BodyStore corpos,
+                         DigestProperties properties,
+                         PlatformTransactionManager transactionManager,
+                         MeterRegistry registry) {
+        this.emailLogRepository = emailLogRepository;
+        this.dispatcher = dispatcher;
+        this.templateService = templateService;
+        this.corpos = corpos;
+        this.properties = properties;
+        this.transacao = new TransactionTemplate(transactionManager);
+        this.digests = Counter.builder("mailnotify.digest.sent")
+                .description("E-mails de digest gerados").register(registry);
+        this.agrupados = Counter.builder("mailnotify.digest.coalesced")
+                .description("E-mails entregues dentro de um digest").register(registry);
+    }
+
+    /** true se o e-mail deve esperar a janela de digest em vez de sair na hora. */
+    public boolean agrupa(String categoria, Prioridade prioridade) {
+        return categoria != null
+                && prioridade != Prioridade.CRITICAL
+                && properties.getCategories().containsKey(categoria);
+    }
+
+    @Scheduled(fixedDelayString = "${mailnotify.digest.poll-ms:1000}")
+    public void fecharJanelas() {
+        if (properties.getCategories().isEmpty()) {
+            return;
+        }
+        LocalDateTime agora = LocalDateTime.now();
+        for (JanelaDigest janela : emailLogRepository.resumirJanelas(BUFFERED)) {
+            DigestProperties.Janela config = properties.getCategories().get(janela.getCategoria());
+            boolean fechar = config == null
+                    || janela.getItens() >= config.getMaxItems()
+                    || !janela.getInicio().plusNanos(config.getWindowMs() * 1_000_000).isAfter(agora);
+            if (!fechar) {
+                continue;
+            }
+            try {
+                transacao.executeWithoutResult(s -> fechar(janela.getDestinatario(), janela.getCategoria(), config));
+            } catch (Exception ex) {
+                // os itens continuam BUFFERED; a próxima passada tenta de novo
+                log.warn("Falha ao fechar digest {} para {}: {}",
+                        janela.getCategoria(), janela.getDestinatario(), ex.getMessage());
+            }
+        }
+    }
+
+    private void fechar(String destinatario, String categoria, DigestProperties.Janela config) {
+        int max = config != null ? Math.max(1, config.getMaxItems()) : MAX_SEM_CONFIG;
+        List<EmailLog> itens = emailLogRepository.findByStatusAndDestinatarioAndCategoriaOrderByDataHoraAsc(
+                BUFFERED, destinatario, categoria, PageRequest.of(0, max));
+        if (itens.isEmpty()) {
+            return;
+        }
+
+        if (itens.size() == 1) {
+            // sozinho na janela: sai como um e-mail comum
+            EmailLog unico = itens.get(0);
+            unico.setStatus(PENDING);
+            unico.setProximaTentativa(LocalDateTime.now());
+            dispatcher.enfileirarAposCommit(unico);
+            return;
+        }
+
+        EmailLog digest = new EmailLog();
+        digest.setDestinatario(destinatario);
+        digest.setCategoria(categoria);
+        digest.setAssunto(assunto(config, itens.size()));
+        digest.setCorpoHash(corpos.armazenar(corpo(itens)));
+        digest.setStatus(PENDING);
+        digest.setPrioridade(maiorPrioridade(itens));
+        emailLogRepository.save(digest);
+
+        for (EmailLog item : itens) {
+            item.setStatus(DIGESTED);
+            item.setDigestId(digest.getId());
+            item.setProximaTentativa(null);
+        }
+        emailLogRepository.saveAll(itens);
+
+        dispatcher.enfileirarAposCommit(digest);
+        digests.increment();
+        agrupados.increment(itens.size());
+    }
+
+    private static String assunto(DigestProperties.Janela config, int itens) {
+        if (config != null && config.getSubject() != null && !config.getSubject().isBlank()) {
+            return config.getSubject() + " (" + itens + ")";
+        }
+        return itens + " novas notificações";
+    }
+
+    // text/plain: um bloco por e-mail original, na ordem em que chegaram
+    private String corpo(List<EmailLog> itens) {
+        StringBuilder sb = new StringBuilder();
+        for (EmailLog item : itens) {
+            String texto = item.getTemplateId() == null ? corpos.conteudo(item) : null;
+            if (item.getTemplateId() != null) {
+                try {
+                    texto = templateService.renderizar(item.getTemplateId(), item.getVariaveis()).texto();
+                } catch (IllegalArgumentException ex) {
+                    texto = null; // template removido: fica só o assunto
+                }
+            }
+            sb.append("• ").append(item.getAssunto()).append("\n");
+            if (texto != null && !texto.isBlank()) {
+                sb.append(texto.strip()).append("\n");
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static Prioridade maiorPrioridade(List<EmailLog> itens) {
+        Prioridade maior = Prioridade.BULK;
+        for (EmailLog item : itens) {
+            Prioridade p = item.getPrioridade() != null ? item.getPrioridade() : Prioridade.NORMAL;
+            if (p.ordinal() < maior.ordinal()) {
+                maior = p;
+            }
+        }
+        return maior;
+    }
+}
@@ -0,0 +1,150 @@
+package com.notificacao.service;
+
+import com.notificacao.config.RateLimitProperties;
+import com.notificacao.config.RateLimitProperties.Limite;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limit por domínio do destinatário + limite global, aplicado antes do envio SMTP.
+ *
+ * Cada bucket é um GCRA (token bucket equivalente) guardado num único AtomicLong
+ * e atualizado por CAS: nenhum lock, nem por domínio nem global.
+ *
+ * Parte da rajada ({@code critical-reserved-share}) fica reservada para CRITICAL: o tráfego
+ * comum para antes de esgotar o bucket, então um reset de senha ainda passa com o domínio
+ * saturado de bulk.
+ */
+@Component
+public class DomainRateLimiter {
+
+    private final RateLimitProperties props;
+    private final Bucket global;
+    private final Map<String, Bucket> porDominio = new ConcurrentHashMap<>();
+
+    private final Counter liberados;
+    private final Counter adiados;
+
+    public DomainRateLimiter(RateLimitProperties props, MeterRegistry registry) {
+        this.props = props;
+        this.global = Bucket.de(props.getGlobal(), props.getCriticalReservedShare());
+        this.liberados = Counter.builder("mailnotify.ratelimit").tag("result", "allowed").register(registry);
+        this.adiados = Counter.builder("mailnotify.ratelimit").tag("result", "deferred").register(registry);
+    }
+
+    /**
+     * Tenta reservar um envio para o destinatário. Retorna 0 se liberado, ou quantos
+     * milissegundos esperar antes de tentar de novo (o envio deve ser adiado, não falhado).
+     * {@code critico} pode usar a parte reservada da rajada.
+     */
+    public long reservar(String destinatario, boolean critico) {
+        if (!props.isEnabled()) {
+            return 0;
+        }
+        long agora = System.nanoTime();
+
+        // domínio primeiro: é o limite que mais costuma estourar
+        Bucket dominio = bucketDo(dominio(destinatario));
+        long espera = dominio != null ? dominio.reservar(agora, critico) : 0;
+        if (espera == 0 && global != null) {
+            espera = global.reservar(agora, critico);
+            if (espera > 0 && dominio != null) {
+                dominio.devolver(); // não consome o domínio se o global barrou
+            }
+        }
+
+        if (espera > 0) {
+            adiados.increment();
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(espera));
+        }
+        liberados.increment();
+        return 0;
+    }
+
+    private Bucket bucketDo(String dominio) {
+        Bucket bucket = porDominio.get(dominio);
+        if (bucket != null) {
+            return bucket;
+        }
+        Limite limite = props.getDomains().getOrDefault(dominio, props.getDefaultDomain());
+        if (limite == null || limite.getPerSecond() <= 0) {
+            return null;
+        }
+        return porDominio.computeIfAbsent(dominio, d -> Bucket.de(limite, props.getCriticalReservedShare()));
+    }
+
+    static String dominio(String destinatario) {
+        int arroba = destinatario == null ? -1 : destinatario.lastIndexOf('@');
+        return arroba < 0 ? "" : destinatario.substring(arroba + 1).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Remove buckets de domínios que estão cheios (ociosos) — recriá-los dá o mesmo estado. */
+    @Scheduled(fixedDelayString = "${mailnotify.rate-limit.cleanup-ms:60000}")
+    public void limparOciosos() {
+        long agora = System.nanoTime();
+        porDominio.values().removeIf(b -> b.ocioso(agora));
+    }
+
+    /**
+     * GCRA: {@code tat} é o "theoretical arrival time" do próximo envio. Um envio é
+     * liberado se tat - agora <= tolerancia (rajada); ao liberar, tat avança um intervalo.
+     * O tráfego não crítico usa uma tolerância menor: os últimos {@code reservados} envios
+     * da rajada ficam para CRITICAL.
+     */
+    static final class Bucket {
+
+        private final long intervaloNanos;
+        private final long toleranciaNanos;
+        private final long toleranciaComumNanos;
+        private final AtomicLong tat;
+
+        private Bucket(double porSegundo, int rajada, int reservados) {
+            this.intervaloNanos = (long) (TimeUnit.SECONDS.toNanos(1) / porSegundo);
+            this.toleranciaNanos = intervaloNanos * Math.max(0, rajada - 1);
+            this.toleranciaComumNanos = toleranciaNanos - intervaloNanos * reservados;
+            this.tat = new AtomicLong(System.nanoTime());
+        }
+
+        static Bucket de(Limite limite, double fracaoCritica) {
+            if (limite == null || limite.getPerSecond() <= 0) {
+                return null;
+            }
+            int rajada = Math.max(1, limite.getBurst());
+            // ao menos 1 envio da rajada para o tráfego comum
+            int reservados = Math.min(rajada - 1, (int) Math.ceil(rajada * Math.max(0, fracaoCritica)));
+            return new Bucket(limite.getPerSecond(), rajada, reservados);
+        }
+
+        long reservar(long agora, boolean critico) {
+            long tolerancia = critico ? toleranciaNanos : toleranciaComumNanos;
+            while (true) {
+                long atual = tat.get();
+                long base = Math.max(atual, agora);
+                long adiantado = base - agora;
+                if (adiantado > tolerancia) {
+                    return adiantado - tolerancia;
+                }
+                if (tat.compareAndSet(atual, base + intervaloNanos)) {
+                    return 0;
+                }
+            }
+        }
+
+        void devolver() {
+            tat.addAndGet(-intervaloNanos);
+        }
+
+        boolean ocioso(long agora) {
+            return tat.get() <= agora;
+        }
+    }
+}
@@ -0,0 +1,588 @@
+package com.notificacao.service;
+
+import com.notificacao.config.FanoutMimeMessage;
+import com.notificacao.model.EmailLog;
+import com.notificacao.model.EmailStatus;
+import com.notificacao.model.Prioridade;
+import com.notificacao.repository.EmailLogRepository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.Message;
+import jakarta.mail.internet.InternetAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.notificacao.model.EmailStatus.*;
+
+/**
+ * Dispatcher da outbox: o request só grava o {@link EmailLog} como PENDING e
+ * este componente entrega em background, num pool limitado de workers que
+ * consomem uma fila por {@link Prioridade} (weighted round-robin + workers
+ * reservados para CRITICAL).
+ *
+ * Falhas não dormem em nenhuma thread: o log volta para RETRYING com
+ * {@code proximaTentativa} calculada por backoff exponencial com jitter, e o
+ * polling o pega de novo quando vencer (inclusive após um restart).
+ *
+ * Durante o envio SMTP o log fica SENDING com um lease ({@code leaseAte}) renovado
+ * por heartbeat; se o processo morrer no meio, o lease vence e o log volta para
+ * RETRYING. No shutdown a entrada de trabalho para, a fila é drenada até o prazo e
+ * o que sobrar continua PENDING/RETRYING no banco para o próximo start.
+ *
+ * Várias instâncias podem dividir o mesmo banco: o polling reivindica lotes com
+ * SELECT ... FOR UPDATE SKIP LOCKED (dono + lease), e cada entrega só segue se um
+ * UPDATE condicional confirmar que o log ainda está livre ou é deste nó.
+ */
+@Component
+public class EmailDispatcher implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailDispatcher.class);
+
+    private final RelayRouter relayRouter;
+    private final EmailLogRepository emailLogRepository;
+    private final DomainRateLimiter rateLimiter;
+    private final SmtpCircuitBreaker circuitBreaker;
+    private final TemplateService templateService;
+    private final MimeFanout fanout;
+    private final AttachmentStore attachmentStore;
+    private final BodyStore corpos;
+    private final PriorityLanes lanes;
+    private final List<Thread> workers = new ArrayList<>();
+    private final int lote;
+
+    private final int maxTentativas;
+    private final long atrasoInicialMs;
+    private final double multiplicador;
+    private final long atrasoMaximoMs;
+    private final double jitter;
+
+    // ids já entregues às filas (evita que o polling enfileire o mesmo log duas vezes)
+    private final Set<Long> emVoo = ConcurrentHashMap.newKeySet();
+
+    // envios SMTP em andamento e total concluído (sucesso ou falha) — usados pelo controle de admissão
+    private final AtomicInteger enviando = new AtomicInteger();
+    private final AtomicLong concluidos = new AtomicLong();
+
+    // ids em SENDING neste processo: o heartbeat renova o lease deles
+    private final Set<Long> comLease = ConcurrentHashMap.newKeySet();
+    private final long leaseMs;
+    private final long prazoDrenagemMs;
+
+    // identifica esta instância em EmailLog.dono
+    private final String noId;
+    private final TransactionTemplate transacao;
+
+    // false antes do start e a partir do início do shutdown: nada novo entra nas filas
+    private volatile boolean aceitando;
+    private volatile boolean rodando;
+
+    public EmailDispatcher(RelayRouter relayRouter,
+                           EmailLogRepository emailLogRepository,
+                           DomainRateLimiter rateLimiter,
+                           SmtpCircuitBreaker circuitBreaker,
+                           TemplateService templateService,
+                           MimeFanout fanout,
+                           AttachmentStore attachmentStore,
+                           BodyStore corpos,
+                           MeterRegistry registry,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${mailnotify.node-id:}") String noId,
+                           @Value("${mailnotify.dispatch.threads:4}") int threads,
+                           @Value("${mailnotify.dispatch.critical-reserved-threads:1}") int threadsCriticas,
+                           @Value("${mailnotify.dispatch.queue-capacity:1000}") int capacidade,
+                           @Value("${mailnotify.dispatch.lane-weights:8,3,1}") int[] pesos,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtual,
+                           @Value("${mailnotify.dispatch.batch-size:100}") int lote,
+                           @Value("${mailnotify.retry.max-attempts:3}") int maxTentativas,
+                           @Value("${mailnotify.retry.initial-delay-ms:5000}") long atrasoInicialMs,
+                           @Value("${mailnotify.retry.multiplier:2.0}") double multiplicador,
+                           @Value("${mailnotify.retry.max-delay-ms:600000}") long atrasoMaximoMs,
+                           @Value("${mailnotify.retry.jitter:0.2}") double jitter,
+                           @Value("${mailnotify.dispatch.lease-ms:120000}") long leaseMs,
+                           @Value("${mailnotify.dispatch.shutdown-drain-ms:20000}") long prazoDrenagemMs) {
+        this.relayRouter = relayRouter;
+        this.emailLogRepository = emailLogRepository;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.templateService = templateService;
+        this.fanout = fanout;
+        this.attachmentStore = attachmentStore;
+        this.corpos = corpos;
+        this.lote = lote;
+        this.maxTentativas = maxTentativas;
+        this.atrasoInicialMs = atrasoInicialMs;
+        this.multiplicador = multiplicador;
+        this.atrasoMaximoMs = atrasoMaximoMs;
+        this.jitter = jitter;
+        this.leaseMs = leaseMs;
+        this.prazoDrenagemMs = prazoDrenagemMs;
+        this.noId = noId == null || noId.isBlank() ? noPadrao() : noId;
+        this.transacao = new TransactionTemplate(transactionManager);
+
+        if (pesos.length != Prioridade.values().length) {
+            throw new IllegalArgumentException("mailnotify.dispatch.lane-weights precisa de "
+                    + Prioridade.values().length + " pesos (" + Arrays.toString(Prioridade.values()) + "), recebeu "
+                    + pesos.length);
+        }
+        int[] capacidades = new int[Prioridade.values().length];
+        Arrays.fill(capacidades, capacidade);
+        this.lanes = new PriorityLanes(capacidades, pesos);
+        for (Prioridade prioridade : Prioridade.values()) {
+            Gauge.builder("mailnotify.dispatch.queue", lanes, l -> l.tamanho(prioridade))
+                    .tag("lane", prioridade.name()).register(registry);
+        }
+        Gauge.builder("mailnotify.dispatch.inflight", enviando, AtomicInteger::get)
+                .description("Envios SMTP em andamento").register(registry);
+
+        // Com virtual threads, "threads" vira só o limite de envios simultâneos:
+        // cada tarefa bloqueada em SMTP/JDBC não segura uma thread de plataforma
+        ThreadFactory fabrica;
+        if (virtual) {
+            fabrica = Thread.ofVirtual().name("mail-dispatch-vt-", 1).factory();
+        } else {
+            AtomicInteger seq = new AtomicInteger();
+            fabrica = r -> {
+                Thread t = new Thread(r, "mail-dispatch-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+        }
+        // workers reservados só atendem CRITICAL: um reset de senha nunca espera o bulk liberar thread
+        for (int i = 0; i < threads + threadsCriticas; i++) {
+            boolean soCritico = i >= threads;
+            workers.add(fabrica.newThread(() -> consumir(soCritico)));
+        }
+    }
+
+    @Override
+    public void start() {
+        workers.forEach(Thread::start);
+        aceitando = true;
+        rodando = true;
+    }
+
+    /**
+     * Shutdown gracioso: para de aceitar trabalho, deixa os workers esvaziarem as filas
+     * e terminarem os envios em andamento até o prazo, e só então os interrompe. Os ids
+     * que ficaram na fila não se perdem: os logs continuam PENDING/RETRYING no banco.
+     */
+    @Override
+    public void stop() {
+        aceitando = false;
+        long limite = System.currentTimeMillis() + prazoDrenagemMs;
+        try {
+            while (System.currentTimeMillis() < limite && (totalNasFilas() > 0 || enviando.get() > 0)) {
+                Thread.sleep(50);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        int restantes = totalNasFilas();
+        if (restantes > 0 || enviando.get() > 0) {
+            log.warn("Shutdown: {} e-mails ficaram para o próximo start, {} envios interrompidos",
+                    restantes, enviando.get());
+        }
+        workers.forEach(Thread::interrupt);
+        rodando = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return rodando;
+    }
+
+    // para depois do servidor web (que para antes de DEFAULT_PHASE - 1024): o intake HTTP já fechou
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    /** false durante o shutdown: quem recebe envios deve recusar. */
+    public boolean aceitando() {
+        return aceitando;
+    }
+
+    /** Enfileira o log assim que a transação corrente fizer commit (ou na hora, se não houver). */
+    public void enfileirarAposCommit(EmailLog emailLog) {
+        enfileirarAposCommit(List.of(emailLog));
+    }
+
+    /** Versão em lote: uma única sincronização para todos os logs da transação. */
+    public void enfileirarAposCommit(List<EmailLog> logs) {
+        long[] ids = new long[logs.size()];
+        Prioridade[] prioridades = new Prioridade[logs.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = logs.get(i).getId();
+            prioridades[i] = logs.get(i).getPrioridade();
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enfileirarTodos(ids, prioridades);
+                }
+            });
+        } else {
+            enfileirarTodos(ids, prioridades);
+        }
+    }
+
+    private void enfileirarTodos(long[] ids, Prioridade[] prioridades) {
+        for (int i = 0; i < ids.length; i++) {
+            // fila cheia: o log continua PENDING e sai pelo polling
+            enfileirar(ids[i], prioridades[i]);
+        }
+    }
+
+    /**
+     * Entrega o log à fila da sua prioridade. Retorna false se ela estiver cheia — o
+     * log continua PENDING no banco e será pego pelo próximo ciclo de {@link #drenar()}.
+     */
+    public boolean enfileirar(Long logId, Prioridade prioridade) {
+        if (!aceitando) {
+            return false; // shutdown: fica no banco para o próximo start
+        }
+        if (!emVoo.add(logId)) {
+            return true; // já está na fila
+        }
+        if (!lanes.oferecer(prioridade != null ? prioridade : Prioridade.NORMAL, logId)) {
+            emVoo.remove(logId);
+            return false;
+        }
+        return true;
+    }
+
+    /** Logs aguardando worker na fila da prioridade. */
+    public int tamanhoFila(Prioridade prioridade) {
+        return lanes.tamanho(prioridade);
+    }
+
+    /** Envios SMTP em andamento agora. */
+    public int enviando() {
+        return enviando.get();
+    }
+
+    /** Total de envios concluídos (sucesso ou falha) desde o start; monotônico. */
+    public long concluidos() {
+        return concluidos.get();
+    }
+
+    /** Varre, por prioridade, os PENDING que ficaram para trás e os RETRYING cuja próxima tentativa venceu. */
+    @Scheduled(fixedDelayString = "${mailnotify.dispatch.poll-ms:1000}")
+    public void drenar() {
+        if (!aceitando || circuitBreaker.aberto()) {
+            return; // relay fora: os logs ficam PENDING/RETRYING no banco
+        }
+        for (Prioridade prioridade : Prioridade.values()) {
+            int livre = lanes.livre(prioridade);
+            if (livre == 0) {
+                continue;
+            }
+            List<EmailLog> pendentes = reivindicar(prioridade, Math.min(lote, livre));
+            for (EmailLog pendente : pendentes) {
+                if (!enfileirar(pendente.getId(), prioridade)) {
+                    break; // fila saturada; tenta no próximo ciclo
+                }
+            }
+        }
+    }
+
+    /**
+     * Reivindica até {@code limite} logs vencidos da prioridade numa transação curta: as
+     * linhas travadas por outra instância são puladas (SKIP LOCKED) e as escolhidas ganham
+     * dono + lease, então as demais instâncias também as ignoram depois do commit.
+     */
+    private List<EmailLog> reivindicar(Prioridade prioridade, int limite) {
+        return transacao.execute(s -> {
+            LocalDateTime agora = LocalDateTime.now();
+            LocalDateTime ate = agora.plus(Duration.ofMillis(leaseMs));
+            List<EmailLog> prontos = emailLogRepository.findProntos(
+                    List.of(PENDING, RETRYING), prioridade, agora, PageRequest.of(0, limite));
+            for (EmailLog pronto : prontos) {
+                pronto.setDono(noId);
+                pronto.setLeaseAte(ate);
+            }
+            return prontos;
+        });
+    }
+
+    /**
+     * Start: devolve à fila os logs que um processo anterior deixou SENDING (lease vencido),
+     * em lotes limitados, e já puxa os PENDING/RETRYING vencidos.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recuperar() {
+        int liberados = liberarLeasesVencidos();
+        if (liberados > 0) {
+            log.info("Recuperação: {} e-mails com lease vencido voltaram para RETRYING", liberados);
+        }
+        drenar();
+    }
+
+    /** Lease vencido = processo morreu no meio do envio; volta para RETRYING (at-least-once). */
+    @Scheduled(fixedDelayString = "${mailnotify.dispatch.lease-check-ms:30000}")
+    public int liberarLeasesVencidos() {
+        int total = 0;
+        List<Long> ids;
+        do {
+            LocalDateTime agora = LocalDateTime.now();
+            ids = emailLogRepository.findLeasesVencidos(SENDING, agora, PageRequest.of(0, lote));
+            ids.removeIf(comLease::contains); // heartbeat atrasado de um envio nosso ainda em curso
+            if (!ids.isEmpty()) {
+                total += emailLogRepository.liberarLeases(ids, SENDING, RETRYING, agora);
+            }
+        } while (ids.size() == lote);
+        return total;
+    }
+
+    /** Heartbeat: estende o lease dos envios em andamento neste processo. */
+    @Scheduled(fixedDelayString = "${mailnotify.dispatch.heartbeat-ms:30000}")
+    public void renovarLeases() {
+        if (comLease.isEmpty()) {
+            return;
+        }
+        emailLogRepository.renovarLeases(List.copyOf(comLease), SENDING, noId,
+                LocalDateTime.now().plus(Duration.ofMillis(leaseMs)));
+    }
+
+    public String getNoId() {
+        return noId;
+    }
+
+    private static String noPadrao() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            host = "localhost";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    private int totalNasFilas() {
+        int total = 0;
+        for (Prioridade prioridade : Prioridade.values()) {
+            total += lanes.tamanho(prioridade);
+        }
+        return total;
+    }
+
+    private void consumir(boolean soCritico) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Long logId;
+            try {
+                logId = lanes.proximo(soCritico);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            entregar(logId);
+        }
+    }
+
+    private void entregar(Long logId) {
+        try {
+            // compare-and-set: só segue se o log ainda estiver pronto e livre (ou já reivindicado por este nó)
+            LocalDateTime agora = LocalDateTime.now();
+            int reivindicado = emailLogRepository.reivindicar(logId, List.of(PENDING, RETRYING), noId,
+                    agora, agora.plus(Duration.ofMillis(leaseMs)));
+            if (reivindicado == 0) {
+                return; // já enviado, ainda não venceu ou outra instância pegou
+            }
+            emailLogRepository.findById(logId).ifPresent(this::enviar);
+        } catch (Exception ex) {
+            log.error("Falha inesperada ao despachar e-mail {}", logId, ex);
+        } finally {
+            emVoo.remove(logId);
+        }
+    }
+
+    private void enviar(EmailLog emailLog) {
+        // CRITICAL usa a parte reservada do rate limit e as conexões SMTP reservadas
+        boolean critico = emailLog.getPrioridade() == Prioridade.CRITICAL;
+
+        // circuito aberto: falha rápida, sem tentar nem gastar tentativa — antes do rate limit,
+        // para não consumir a cota do domínio com um envio que nem sai
+        if (!circuitBreaker.permitir()) {
+            long aguardar = Math.max(1000, circuitBreaker.msAteSondar());
+            emailLog.setProximaTentativa(LocalDateTime.now().plus(Duration.ofMillis(aguardar)));
+            emailLog.setLeaseAte(null);
+            emailLogRepository.save(emailLog);
+            return;
+        }
+
+        // acima do limite do domínio/global: adia sem contar tentativa (e devolve a sonda, se era uma)
+        long esperaMs = rateLimiter.reservar(emailLog.getDestinatario(), critico);
+        if (esperaMs > 0) {
+            circuitBreaker.liberar();
+            emailLog.setProximaTentativa(LocalDateTime.now().plus(Duration.ofMillis(esperaMs)));
+            emailLog.setLeaseAte(null);
+            emailLogRepository.save(emailLog);
+            return;
+        }
+
+        MimeMessagePreparator msg;
+        try {
+            msg = montar(emailLog);
+        } catch (IllegalArgumentException ex) {
+            // template ou anexo removido/inválido: não adianta tentar de novo
+            circuitBreaker.liberar();
+            emailLog.setStatus(FAILED);
+            emailLog.setErro(ex.getMessage());
+            emailLog.setProximaTentativa(null);
+            emailLog.setLeaseAte(null);
+            emailLogRepository.save(emailLog);
+            return;
+        }
+
+        // SENDING + lease antes de falar com o SMTP: se o processo morrer aqui, a recuperação o devolve
+        EmailStatus statusAnterior = emailLog.getStatus();
+        emailLog.setTentativas(emailLog.getTentativas() + 1);
+        emailLog.setStatus(SENDING);
+        emailLog.setLeaseAte(LocalDateTime.now().plus(Duration.ofMillis(leaseMs)));
+        emailLog = emailLogRepository.save(emailLog);
+        comLease.add(emailLog.getId());
+
+        long inicio = System.nanoTime();
+        enviando.incrementAndGet();
+        try {
+            emailLog.setRelay(relayRouter.enviar(msg, critico));
+            circuitBreaker.registrar(true, System.nanoTime() - inicio);
+            emailLog.setStatus(SUCCESS);
+            emailLog.setErro(null);
+            emailLog.setProximaTentativa(null);
+        } catch (Exception ex) {
+            emailLog.setErro(ex.getMessage());
+            switch (FalhaSmtp.de(ex)) {
+                case PERMANENTE -> {
+                    // 5xx/endereço inválido: o servidor respondeu; repetir daria o mesmo resultado
+                    circuitBreaker.registrar(true, System.nanoTime() - inicio);
+                    emailLog.setStatus(FAILED);
+                    emailLog.setProximaTentativa(null);
+                }
+                case SEM_CONEXAO_LIVRE -> {
+                    // pool esgotado: adia sem gastar tentativa e sem culpar relay nem circuito
+                    circuitBreaker.liberar();
+                    emailLog.setTentativas(emailLog.getTentativas() - 1);
+                    emailLog.setStatus(statusAnterior);
+                    emailLog.setProximaTentativa(LocalDateTime.now().plus(Duration.ofMillis(proximoAtrasoMs(1))));
+                }
+                case TRANSITORIA -> {
+                    circuitBreaker.registrar(false, System.nanoTime() - inicio);
+                    if (emailLog.getTentativas() < maxTentativas) {
+                        emailLog.setStatus(RETRYING);
+                        emailLog.setProximaTentativa(LocalDateTime.now().plus(Duration.ofMillis(proximoAtrasoMs(emailLog.getTentativas()))));
+                    } else {
+                        emailLog.setStatus(FAILED);
+                        emailLog.setProximaTentativa(null);
+                    }
+                }
+            }
+        } finally {
+            enviando.decrementAndGet();
+            concluidos.incrementAndGet();
+        }
+        emailLog.setLeaseAte(null);
+        try {
+            emailLogRepository.save(emailLog);
+        } finally {
+            // se o save falhar, o lease vence sozinho e a recuperação devolve o log
+            comLease.remove(emailLog.getId());
+        }
+    }
+
+    /**
+     * Corpo pronto vira text/plain; template vira text/plain + text/html (multipart/alternative).
+     * Sem variáveis por destinatário o corpo é idêntico para todos: vem codificado uma vez do
+     * {@link MimeFanout} (chave = corpoHash ou template + versão, sem ler o corpo) e a cópia
+     * só ganha o próprio To. Os anexos entram na mesma codificação (chave inclui os ids);
+     * fora do fan-out (variáveis por destinatário, corpo legado ou acima do limite do cache)
+     * os arquivos são lidos do disco em streaming na hora de escrever a mensagem.
+     */
+    private MimeMessagePreparator montar(EmailLog emailLog) {
+        String destinatario = emailLog.getDestinatario();
+        String assunto = emailLog.getAssunto();
+        List<AttachmentStore.Arquivo> anexos = attachmentStore.resolver(emailLog.getAnexos());
+        boolean semVariaveis = emailLog.getVariaveis() == null || emailLog.getVariaveis().isEmpty();
+        if (emailLog.getTemplateId() != null) {
+            // versão que vai no e-mail: GET /{id}/body avisa se o template mudou depois
+            emailLog.setTemplateVersao(templateService.versao(emailLog.getTemplateId()));
+        }
+        MimeFanout.Chave chave = semVariaveis ? chaveFanout(emailLog) : null;
+        if (chave == null) {
+            MimeFanout.Conteudo c = conteudo(emailLog, anexos);
+            return mime -> MimeFanout.preencher(mime, destinatario, assunto, c.texto(), c.html(), anexos);
+        }
+        // o corpo só é lido/renderizado se não estiver no cache do fan-out
+        return mime -> {
+            if (mime instanceof FanoutMimeMessage copia) {
+                MimeFanout.Codificado corpo = fanout.corpo(chave, () -> conteudo(emailLog, anexos));
+                if (corpo != null) {
+                    if (corpo.bytes() != null) {
+                        copia.setCorpoCompartilhado(corpo.bytes());
+                    } else {
+                        copia.setCorpoCompartilhado(corpo.arquivo());
+                    }
+                    copia.setRecipient(Message.RecipientType.TO, new InternetAddress(destinatario));
+                    return;
+                }
+            }
+            MimeFanout.Conteudo c = conteudo(emailLog, anexos);
+            MimeFanout.preencher(mime, destinatario, assunto, c.texto(), c.html(), anexos);
+        };
+    }
+
+    // null = corpo legado gravado na própria linha: sem identidade barata, não entra no fan-out
+    private MimeFanout.Chave chaveFanout(EmailLog emailLog) {
+        Map<String, String> anexos = emailLog.getAnexos() == null || emailLog.getAnexos().isEmpty()
+                ? null : Map.copyOf(emailLog.getAnexos());
+        if (emailLog.getTemplateId() != null) {
+            return new MimeFanout.Chave(emailLog.getTemplateId(), emailLog.getTemplateVersao(), emailLog.getAssunto(), anexos);
+        }
+        return emailLog.getCorpoHash() != null
+                ? new MimeFanout.Chave(emailLog.getCorpoHash(), null, emailLog.getAssunto(), anexos)
+                : null;
+    }
+
+    private MimeFanout.Conteudo conteudo(EmailLog emailLog, List<AttachmentStore.Arquivo> anexos) {
+        if (emailLog.getTemplateId() == null) {
+            return new MimeFanout.Conteudo(corpos.conteudo(emailLog), null, anexos);
+        }
+        TemplateService.Renderizado r = templateService.renderizar(emailLog.getTemplateId(), emailLog.getVariaveis());
+        return new MimeFanout.Conteudo(r.texto(), r.html(), anexos);
+    }
+
+    /** Backoff exponencial (inicial * multiplicador^(n-1), limitado ao máximo) com jitter de ±{@code jitter}. */
+    private long proximoAtrasoMs(int tentativa) {
+        double atraso = Math.min(atrasoMaximoMs, atrasoInicialMs * Math.pow(multiplicador, tentativa - 1));
+        double fator = 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return Math.max(0, (long) (atraso * fator));
+    }
+}
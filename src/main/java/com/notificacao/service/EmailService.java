@@ -1,15 +1,75 @@
 package com.notificacao.service;
 
+import com.notificacao.Dto.EmailBodyResponse;
+import com.notificacao.Dto.EmailPage;
+import com.notificacao.Dto.SendBatchItemResult;
+import com.notificacao.Dto.SendEmailRequest;
 import com.notificacao.model.EmailLog;
+import com.notificacao.model.EmailStatus;
+import com.notificacao.model.Prioridade;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 public interface EmailService {
-    /** Dispara o e-mail e registra o histórico (com retry). */
+    /** Registra o e-mail como PENDING; o envio acontece em background (com retry). */
     EmailLog enviarEmail(String to, String assunto, String conteudo);
 
-    /** Lista o histórico; se status for null/vazio, retorna todos. */
-    List<EmailLog> listar(String status);
+    /** Igual a {@link #enviarEmail(String, String, String)}, na fila da prioridade informada. */
+    EmailLog enviarEmail(String to, String assunto, String conteudo, Prioridade prioridade);
+
+    /** Registra a partir do request: corpo pronto (assunto + conteudo) ou template + variáveis. */
+    EmailLog enviar(SendEmailRequest req);
+
+    /**
+     * Igual a {@link #enviar(SendEmailRequest)}, mas no máximo uma vez por {@code chaveIdempotencia}
+     * do {@code usuario}: repetições (inclusive concorrentes) devolvem o log criado pela primeira.
+     * A mesma chave com outro request lança IdempotencyKeyConflictException. Chave null = sem dedupe.
+     * Devolve só id e status: a repetição é respondida sem reler o log.
+     */
+    IdempotencyService.Resposta enviar(SendEmailRequest req, String usuario, String chaveIdempotencia);
+
+    /**
+     * Id e status do log já criado por um {@link #enviar(SendEmailRequest, String, String)} com a
+     * mesma chave e o mesmo request (vazio se a chave é nova ou null). Lança
+     * IdempotencyKeyConflictException se a chave foi usada com outro request. Não grava nada.
+     */
+    Optional<IdempotencyService.Resposta> repeticao(SendEmailRequest req, String usuario, String chaveIdempotencia);
+
+    /**
+     * Registra um e-mail de template: o log guarda o id do template e as variáveis,
+     * e o corpo só é renderizado no envio. Lança IllegalArgumentException se o template não existir.
+     */
+    EmailLog enviarTemplate(String to, String template, Map<String, String> variaveis, Prioridade prioridade);
+
+    /**
+     * Valida o lote numa única passada, descarta destinatários repetidos e grava os
+     * logs com INSERT em batch. O resultado segue a ordem dos itens recebidos.
+     */
+    List<SendBatchItemResult> enviarLote(List<SendEmailRequest> itens);
+
+    /**
+     * Uma página do histórico (só metadados), do mais novo para o mais antigo. Filtros null/vazios
+     * são ignorados; {@code de} é inclusivo e {@code ate} exclusivo. {@code cursor} é o
+     * {@code proximoCursor} da página anterior. Lança IllegalArgumentException se o cursor for inválido.
+     */
+    EmailPage listar(EmailStatus status, String destinatario, LocalDateTime de, LocalDateTime ate,
+                     String cursor, Integer limite);
+
+    /**
+     * Corpo do envio, carregado só quando pedido. Template é renderizado de novo, na versão atual,
+     * com as variáveis do log; a resposta marca isso e compara com a versão usada no envio.
+     */
+    Optional<EmailBodyResponse> corpo(Long logId);
 
     /** Reenvia manualmente com base em um log existente (idempotente). */
     EmailLog reenviar(Long logId);
+
+    /**
+     * Reenvia no máximo uma vez: enquanto houver um reenvio pendente ou entregue do mesmo log,
+     * ele é devolvido em vez de criar outro. {@code chaveIdempotencia} é opcional e escopada por
+     * {@code usuario}; usada antes para outro log, lança IdempotencyKeyConflictException.
+     */
+    EmailLog reenviar(Long logId, String usuario, String chaveIdempotencia);
 }
@@ -1,112 +1,404 @@
 package com.notificacao.service.EmailServiceImpl;
 
+import com.notificacao.Dto.EmailBodyResponse;
+import com.notificacao.Dto.EmailPage;
+import com.notificacao.Dto.SendBatchItemResult;
+import com.notificacao.Dto.SendEmailRequest;
 import com.notificacao.model.EmailLog;
+import com.notificacao.model.EmailStatus;
+import com.notificacao.model.Prioridade;
 import com.notificacao.repository.EmailLogRepository;
+import com.notificacao.repository.EmailLogRepository.ResumoEnvio;
+import com.notificacao.service.AttachmentStore;
+import com.notificacao.service.BodyStore;
+import com.notificacao.service.DigestService;
+import com.notificacao.service.EmailDispatcher;
 import com.notificacao.service.EmailService;
+import com.notificacao.service.IdempotencyService;
+import com.notificacao.service.SendScheduler;
+import com.notificacao.service.TemplateService;
 
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Recover;
-import org.springframework.retry.annotation.Retryable;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.notificacao.model.EmailStatus.*;
 
 @Service
 public class EmailServiceImpl implements EmailService {
 
-    private static final String PENDING  = "PENDING";
-    private static final String RETRYING = "RETRYING";
-    private static final String SUCCESS  = "SUCCESS";
-    private static final String FAILED   = "FAILED";
-
-    private final JavaMailSender mailSender;
     private final EmailLogRepository emailLogRepository;
+    private final EmailDispatcher dispatcher;
+    private final TemplateService templateService;
+    private final Validator validator;
+    private final IdempotencyService idempotencia;
+    private final DigestService digestService;
+    private final SendScheduler agendador;
+    private final AttachmentStore attachmentStore;
+    private final BodyStore corpos;
+    private final TransactionTemplate transacao;
+    private final int tamanhoBatch;
+    private final int tamanhoPagina;
+    private final int maxPagina;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
-    public EmailServiceImpl(JavaMailSender mailSender, EmailLogRepository emailLogRepository) {
-        this.mailSender = mailSender;
+    public EmailServiceImpl(EmailLogRepository emailLogRepository,
+                            EmailDispatcher dispatcher,
+                            TemplateService templateService,
+                            Validator validator,
+                            IdempotencyService idempotencia,
+                            DigestService digestService,
+                            SendScheduler agendador,
+                            AttachmentStore attachmentStore,
+                            BodyStore corpos,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int tamanhoBatch,
+                            @Value("${mailnotify.history.page-size:50}") int tamanhoPagina,
+                            @Value("${mailnotify.history.max-page-size:500}") int maxPagina) {
         this.emailLogRepository = emailLogRepository;
+        this.dispatcher = dispatcher;
+        this.templateService = templateService;
+        this.validator = validator;
+        this.idempotencia = idempotencia;
+        this.digestService = digestService;
+        this.agendador = agendador;
+        this.attachmentStore = attachmentStore;
+        this.corpos = corpos;
+        this.transacao = new TransactionTemplate(transactionManager);
+        this.tamanhoBatch = tamanhoBatch;
+        this.tamanhoPagina = tamanhoPagina;
+        this.maxPagina = maxPagina;
     }
 
     @Override
     @Transactional
     public EmailLog enviarEmail(String to, String assunto, String conteudo) {
-        // 1) cria o log inicial
-        EmailLog log = new EmailLog();
-        log.setDestinatario(to);
-        log.setAssunto(assunto);
-        log.setConteudo(conteudo);
-        log.setStatus(PENDING);
-        log = emailLogRepository.save(log);
+        return enviarEmail(to, assunto, conteudo, Prioridade.NORMAL);
+    }
+
+    @Override
+    @Transactional
+    public EmailLog enviarEmail(String to, String assunto, String conteudo, Prioridade prioridade) {
+        return registrar(novoLog(to, assunto, conteudo, prioridade));
+    }
 
-        // 2) tenta enviar com retry
-        enviarComRetry(log.getId());
+    @Override
+    @Transactional
+    public EmailLog enviar(SendEmailRequest req) {
+        return registrar(novoLog(req));
+    }
+
+    // sem @Transactional: a transação (TransactionTemplate) abre e commita DENTRO do lock da chave
+    @Override
+    public IdempotencyService.Resposta enviar(SendEmailRequest req, String usuario, String chaveIdempotencia) {
+        IdempotencyService.Chave chave = idempotencia.chave(usuario, IdempotencyService.SEND, chaveIdempotencia, req);
+        if (chave == null) {
+            return IdempotencyService.Resposta.de(transacao.execute(s -> registrar(novoLog(req))));
+        }
+        return idempotencia.executar(chave, chave.valor(), () -> transacao.execute(s -> {
+            EmailLog novo = novoLog(req);
+            novo.setChaveIdempotencia(chave.valor());
+            novo.setHashRequisicao(chave.hashRequisicao());
+            return registrar(novo);
+        }));
+    }
 
-        // 3) devolve o estado atualizado
-        return emailLogRepository.findById(log.getId()).orElseThrow();
+    @Override
+    public Optional<IdempotencyService.Resposta> repeticao(SendEmailRequest req, String usuario, String chaveIdempotencia) {
+        return idempotencia.repeticao(idempotencia.chave(usuario, IdempotencyService.SEND, chaveIdempotencia, req));
     }
 
-    /** Tenta enviar: 1 tentativa + 1 retry após 5s (atende ao PDF). */
-    @Retryable(maxAttempts = 2, backoff = @Backoff(delay = 5000))
-    public void enviarComRetry(Long logId) {
-        EmailLog log = emailLogRepository.findById(logId).orElseThrow();
+    @Override
+    @Transactional
+    public EmailLog enviarTemplate(String to, String template, Map<String, String> variaveis, Prioridade prioridade) {
+        return registrar(novoLogTemplate(to, template, variaveis, null, prioridade));
+    }
 
-        log.setStatus(RETRYING);
-        emailLogRepository.save(log);
+    @Override
+    @Transactional
+    public List<SendBatchItemResult> enviarLote(List<SendEmailRequest> itens) {
+        SendBatchItemResult[] resultados = new SendBatchItemResult[itens.size()];
+        List<EmailLog> novos = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        Set<String> vistos = new HashSet<>();
 
-        SimpleMailMessage msg = new SimpleMailMessage();
-        msg.setTo(log.getDestinatario());
-        msg.setSubject(log.getAssunto());
-        msg.setText(log.getConteudo());
+        // 1) validação + dedupe numa única passada
+        for (int i = 0; i < itens.size(); i++) {
+            SendEmailRequest req = itens.get(i);
+            if (req == null) {
+                resultados[i] = new SendBatchItemResult(i, null, null, SendBatchItemResult.INVALID, "item nulo");
+                continue;
+            }
+            Set<ConstraintViolation<SendEmailRequest>> violacoes = validator.validate(req);
+            if (!violacoes.isEmpty()) {
+                String erro = violacoes.stream()
+                        .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; "));
+                resultados[i] = new SendBatchItemResult(i, req.getDestinatario(), null, SendBatchItemResult.INVALID, erro);
+                continue;
+            }
+            if (!vistos.add(req.getDestinatario().trim().toLowerCase(Locale.ROOT))) {
+                resultados[i] = new SendBatchItemResult(i, req.getDestinatario(), null,
+                        SendBatchItemResult.DUPLICATE, "destinatário repetido no lote");
+                continue;
+            }
+            try {
+                novos.add(novoLog(req));
+            } catch (IllegalArgumentException ex) {
+                // template inexistente ou sem assunto
+                resultados[i] = new SendBatchItemResult(i, req.getDestinatario(), null, SendBatchItemResult.INVALID, ex.getMessage());
+                continue;
+            }
+            indices.add(i);
+        }
 
-        try {
-            mailSender.send(msg);
+        // 2) INSERT em batch JDBC; flush/clear por bloco mantém o contexto de persistência pequeno
+        for (int ini = 0; ini < novos.size(); ini += tamanhoBatch) {
+            emailLogRepository.saveAll(novos.subList(ini, Math.min(ini + tamanhoBatch, novos.size())));
+            emailLogRepository.flush();
+            entityManager.clear();
+        }
 
-            log.setStatus(SUCCESS);
-            log.setErro(null);
-            emailLogRepository.save(log);
+        for (int k = 0; k < novos.size(); k++) {
+            EmailLog log = novos.get(k);
+            int i = indices.get(k);
+            resultados[i] = new SendBatchItemResult(i, log.getDestinatario(), log.getId(), log.getStatus().name(), null);
+        }
 
-        } catch (Exception ex) {
-            // marca falha desta tentativa; o @Retryable fará nova tentativa
-            log.setStatus(FAILED);
-            log.setErro(ex.getMessage());
-            emailLogRepository.save(log);
-            throw ex; // re-lança para acionar o retry
+        // 3) entrega em background depois do commit (os BUFFERED esperam o digest; os agendados, a wheel)
+        List<EmailLog> imediatos = new ArrayList<>();
+        List<EmailLog> agendados = new ArrayList<>();
+        for (EmailLog log : novos) {
+            if (PENDING.equals(log.getStatus())) {
+                (log.getEnviarEm() != null ? agendados : imediatos).add(log);
+            }
         }
-    }
+        dispatcher.enfileirarAposCommit(imediatos);
+        agendador.agendarAposCommit(agendados);
 
-    /** Chamado quando todas as tentativas falham. */
-    @Recover
-    public void recover(Exception ex, Long logId) {
-        emailLogRepository.findById(logId).ifPresent(log -> {
-            log.setStatus(FAILED);
-            log.setErro(ex.getMessage());
-            emailLogRepository.save(log);
-        });
+        return Arrays.asList(resultados);
     }
 
     @Override
-    public List<EmailLog> listar(String status) {
-        if (status == null || status.isBlank()) {
-            return emailLogRepository.findAllByOrderByDataHoraDesc();
+    public EmailPage listar(EmailStatus status, String destinatario, LocalDateTime de, LocalDateTime ate,
+                            String cursor, Integer limite) {
+        int tamanho = limite == null || limite <= 0 ? tamanhoPagina : Math.min(limite, maxPagina);
+        LocalDateTime cursorData = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String[] partes = new String(Base64.getUrlDecoder().decode(cursor.strip()), StandardCharsets.UTF_8)
+                        .split("\\|", 2);
+                cursorData = LocalDateTime.parse(partes[0]);
+                cursorId = Long.valueOf(partes[1]);
+            } catch (IllegalArgumentException | DateTimeParseException | ArrayIndexOutOfBoundsException ex) {
+                throw new IllegalArgumentException("cursor inválido");
+            }
+        }
+        String filtroDestinatario = destinatario == null || destinatario.isBlank() ? null : destinatario.strip();
+
+        // um a mais que a página: se vier, há próxima página e o cursor aponta para o último entregue
+        List<ResumoEnvio> itens = emailLogRepository.buscarHistorico(status, filtroDestinatario, de, ate,
+                cursorData, cursorId, PageRequest.of(0, tamanho + 1));
+        String proximo = null;
+        if (itens.size() > tamanho) {
+            itens = itens.subList(0, tamanho);
+            ResumoEnvio ultimo = itens.get(tamanho - 1);
+            proximo = cursor(ultimo.getDataHora(), ultimo.getId());
         }
-        return emailLogRepository.findAllByStatusIgnoreCaseOrderByDataHoraDesc(status);
+        return new EmailPage(itens, proximo);
+    }
+
+    // cursor opaco: base64url de "dataHora|id" do último item entregue
+    private static String cursor(LocalDateTime dataHora, Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((dataHora + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<EmailBodyResponse> corpo(Long logId) {
+        return emailLogRepository.findById(logId).map(log -> {
+            String texto = null;
+            String html = null;
+            String versaoAtual = null;
+            try {
+                if (log.getTemplateId() == null) {
+                    texto = corpos.conteudo(log);
+                } else {
+                    // só o fonte atual do template é guardado: o corpo é renderizado de novo com ele
+                    TemplateService.Renderizado r = templateService.renderizar(log.getTemplateId(), log.getVariaveis());
+                    texto = r.texto();
+                    html = r.html();
+                    versaoAtual = r.versao();
+                }
+            } catch (IllegalArgumentException ex) {
+                // template removido (ficam o nome e as variáveis) ou corpo já coletado
+            }
+            EmailBodyResponse resposta = new EmailBodyResponse(log.getId(), log.getAssunto(), texto, html,
+                    log.getTemplateId(), log.getVariaveis(), log.getAnexos());
+            if (versaoAtual != null) {
+                resposta.setReRenderizado(true);
+                resposta.setTemplateVersao(log.getTemplateVersao());
+                resposta.setTemplateVersaoAtual(versaoAtual);
+                resposta.setTemplateAlterado(log.getTemplateVersao() == null ? null
+                        : !log.getTemplateVersao().equals(versaoAtual));
+            }
+            return resposta;
+        });
     }
 
     @Override
-    @Transactional
     public EmailLog reenviar(Long logId) {
+        return reenviar(logId, null, null);
+    }
+
+    // o lock é por log (não pela chave): dois admins com chaves diferentes também colapsam
+    @Override
+    public EmailLog reenviar(Long logId, String usuario, String chaveIdempotencia) {
+        IdempotencyService.Chave chave = idempotencia.chave(usuario, IdempotencyService.RETRY, chaveIdempotencia, logId);
+        IdempotencyService.Resposta resposta = idempotencia.executar(chave, "retry:" + logId,
+                () -> transacao.execute(s -> reenviarNaTransacao(logId, chave)));
+        // o reenvio responde com o log inteiro (operação manual, rara): relê pelo id
+        return emailLogRepository.findById(resposta.id()).orElseThrow();
+    }
+
+    private EmailLog reenviarNaTransacao(Long logId, IdempotencyService.Chave chave) {
         EmailLog original = emailLogRepository.findById(logId).orElseThrow();
 
         // Idempotência simples: se já foi SUCCESS, não dispara novo envio
-        if (SUCCESS.equalsIgnoreCase(original.getStatus())) {
+        if (original.getStatus() == SUCCESS) {
             return original;
         }
 
-        // Cria um NOVO registro para a nova tentativa (mantém histórico)
-        return enviarEmail(original.getDestinatario(), original.getAssunto(), original.getConteudo());
+        // ...nem se já existe um reenvio dele ainda pendente (ou que já deu certo)
+        Optional<EmailLog> existente = emailLogRepository.findFirstByReenvioDeAndStatusInOrderByIdDesc(
+                logId, List.of(PENDING, RETRYING, SENDING, SUCCESS));
+        if (existente.isPresent()) {
+            return existente.get();
+        }
+
+        // Cria um NOVO registro para a nova tentativa (mantém histórico); o corpo é o mesmo
+        // em corpo_email (log antigo com conteudo na própria linha é deduplicado agora)
+        EmailLog copia = novoLog(original.getDestinatario(), original.getAssunto(), original.getConteudo(),
+                original.getPrioridade());
+        if (original.getCorpoHash() != null) {
+            copia.setCorpoHash(original.getCorpoHash());
+        }
+        copia.setTemplateId(original.getTemplateId());
+        if (original.getVariaveis() != null) {
+            copia.setVariaveis(new HashMap<>(original.getVariaveis()));
+        }
+        if (original.getAnexos() != null && !original.getAnexos().isEmpty()) {
+            // como no envio novo: anexo já coletado recusa o reenvio (400), e o tocar segura o GC
+            attachmentStore.resolver(original.getAnexos());
+            attachmentStore.tocar(original.getAnexos().values());
+            copia.setAnexos(new HashMap<>(original.getAnexos()));
+        }
+        copia.setReenvioDe(logId);
+        if (chave != null) {
+            copia.setChaveIdempotencia(chave.valor());
+            copia.setHashRequisicao(chave.hashRequisicao());
+        }
+        return registrar(copia);
     }
-}
 
+    private EmailLog registrar(EmailLog novo) {
+        // 1) grava o log como PENDING (outbox)
+        EmailLog log = emailLogRepository.save(novo);
+
+        // 2) o envio SMTP fica com o dispatcher, depois do commit; BUFFERED sai no digest
+        if (PENDING.equals(log.getStatus())) {
+            if (log.getEnviarEm() != null) {
+                agendador.agendarAposCommit(log);
+            } else {
+                dispatcher.enfileirarAposCommit(log);
+            }
+        }
+
+        return log;
+    }
+
+    private EmailLog novoLog(SendEmailRequest req) {
+        EmailLog log;
+        if (req.getTemplate() != null && !req.getTemplate().isBlank()) {
+            log = novoLogTemplate(req.getDestinatario(), req.getTemplate(), req.getVariaveis(),
+                    req.getAssunto(), req.getPrioridade());
+        } else {
+            log = novoLog(req.getDestinatario(), req.getAssunto(), req.getConteudo(), req.getPrioridade());
+        }
+        log.setCategoria(req.getCategoria());
+        if (req.getAnexos() != null && !req.getAnexos().isEmpty()) {
+            attachmentStore.resolver(req.getAnexos()); // valida ids e limite total já no request
+            attachmentStore.tocar(req.getAnexos().values()); // segura o GC enquanto o envio existir
+            log.setAnexos(new HashMap<>(req.getAnexos()));
+        }
+        // o instante pedido vira o relógio local do servidor, o mesmo de LocalDateTime.now()
+        // usado pelo dispatcher e pela timing wheel (e gravado como está nas colunas DATETIME)
+        LocalDateTime enviarEm = req.getEnviarEm() == null ? null
+                : LocalDateTime.ofInstant(req.getEnviarEm().toInstant(), ZoneId.systemDefault());
+        if (enviarEm != null && enviarEm.isAfter(LocalDateTime.now())) {
+            // agendado: a primeira tentativa vence no horário pedido
+            log.setEnviarEm(enviarEm);
+            log.setProximaTentativa(enviarEm);
+        } else if (log.getAnexos() == null && digestService.agrupa(log.getCategoria(), log.getPrioridade())) {
+            // com anexo não entra no digest: o resumo é só texto
+            log.setStatus(BUFFERED);
+        }
+        return log;
+    }
+
+    // guarda só o template e as variáveis; o assunto é renderizado agora para o histórico
+    private EmailLog novoLogTemplate(String to, String template, Map<String, String> variaveis,
+                                     String assunto, Prioridade prioridade) {
+        if (assunto == null || assunto.isBlank()) {
+            assunto = templateService.renderizarAssunto(template, variaveis);
+        } else if (!templateService.existe(template)) {
+            throw new IllegalArgumentException("template não encontrado: " + template);
+        }
+        if (assunto == null || assunto.isBlank()) {
+            throw new IllegalArgumentException("template sem assunto; informe o assunto");
+        }
+        EmailLog log = novoLog(to, assunto, null, prioridade);
+        log.setTemplateId(template);
+        log.setTemplateVersao(templateService.versao(template));
+        log.setVariaveis(variaveis);
+        return log;
+    }
+
+    private EmailLog novoLog(String to, String assunto, String conteudo, Prioridade prioridade) {
+        EmailLog log = new EmailLog();
+        log.setDestinatario(to);
+        log.setAssunto(assunto);
+        log.setCorpoHash(corpos.armazenar(conteudo));
+        log.setStatus(PENDING);
+        log.setPrioridade(prioridade != null ? prioridade : Prioridade.NORMAL);
+        return log;
+    }
+}
@@ -0,0 +1,149 @@
+package com.notificacao.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notificacao.model.EmailStatus;
+import com.notificacao.repository.EmailLogRepository;
+import com.notificacao.repository.EmailLogRepository.ResumoEnvio;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exportação do histórico (metadados) em NDJSON ou CSV, opcionalmente gzip, escrita
+ * direto no OutputStream da resposta.
+ *
+ * Lê em blocos pelo mesmo keyset do histórico ((dataHora, id) decrescente): cada bloco
+ * é uma consulta curta em autocommit, sem transação aberta nem conexão presa enquanto
+ * um cliente lento baixa o arquivo. O heap guarda no máximo um bloco.
+ */
+@Service
+public class ExportService {
+
+    public enum Formato { NDJSON, CSV }
+
+    private static final String[] COLUNAS = {"id", "destinatario", "assunto", "status", "erro", "dataHora"};
+
+    private final EmailLogRepository emailLogRepository;
+    private final ObjectMapper objectMapper;
+    private final int lote;
+    private final Counter linhas;
+
+    public ExportService(EmailLogRepository emailLogRepository,
+                         ObjectMapper objectMapper,
+                         MeterRegistry registry,
+                         @Value("${mailnotify.export.batch-size:1000}") int lote) {
+        this.emailLogRepository = emailLogRepository;
+        this.objectMapper = objectMapper;
+        this.lote = lote;
+        this.linhas = Counter.builder("mailnotify.export.rows")
+                .description("Linhas escritas pelas exportações do histórico").register(registry);
+    }
+
+    public static Formato formato(String valor) {
+        if (valor == null || valor.isBlank()) {
+            return Formato.NDJSON;
+        }
+        try {
+            return Formato.valueOf(valor.strip().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("format inválido: " + valor + " (use ndjson ou csv)");
+        }
+    }
+
+    /** Escreve todo o histórico filtrado em {@code saida}; filtros null são ignorados. */
+    public void exportar(EmailStatus status, String destinatario, LocalDateTime de, LocalDateTime ate,
+                         Formato formato, boolean gzip, OutputStream saida) throws IOException {
+        String filtroDestinatario = destinatario == null || destinatario.isBlank() ? null : destinatario.strip();
+
+        OutputStream destino = gzip ? new GZIPOutputStream(saida, 64 * 1024) : saida;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(destino, StandardCharsets.UTF_8), 64 * 1024);
+        if (formato == Formato.CSV) {
+            writer.write(String.join(",", COLUNAS));
+            writer.write("\r\n");
+        }
+
+        LocalDateTime cursorData = null;
+        Long cursorId = null;
+        List<ResumoEnvio> bloco;
+        do {
+            bloco = emailLogRepository.buscarHistorico(status, filtroDestinatario, de, ate,
+                    cursorData, cursorId, PageRequest.of(0, lote));
+            for (ResumoEnvio r : bloco) {
+                if (formato == Formato.CSV) {
+                    escreverCsv(writer, r);
+                } else {
+                    escreverJson(writer, r);
+                }
+            }
+            if (!bloco.isEmpty()) {
+                ResumoEnvio ultimo = bloco.get(bloco.size() - 1);
+                cursorData = ultimo.getDataHora();
+                cursorId = ultimo.getId();
+                linhas.increment(bloco.size());
+                writer.flush(); // entrega o bloco ao cliente antes de buscar o próximo
+            }
+        } while (bloco.size() == lote);
+
+        writer.flush();
+        if (destino instanceof GZIPOutputStream gz) {
+            gz.finish();
+        }
+        saida.flush();
+    }
+
+    private void escreverJson(Writer writer, ResumoEnvio r) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(writer);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        json.writeStartObject();
+        json.writeNumberField("id", r.getId());
+        json.writeStringField("destinatario", r.getDestinatario());
+        json.writeStringField("assunto", r.getAssunto());
+        json.writeStringField("status", r.getStatus() != null ? r.getStatus().name() : null);
+        json.writeStringField("erro", r.getErro());
+        json.writeStringField("dataHora", r.getDataHora() != null ? r.getDataHora().toString() : null);
+        json.writeEndObject();
+        json.flush();
+        writer.write('\n');
+    }
+
+    private static void escreverCsv(Writer writer, ResumoEnvio r) throws IOException {
+        writer.write(String.valueOf(r.getId()));
+        writer.write(',');
+        writer.write(csv(r.getDestinatario()));
+        writer.write(',');
+        writer.write(csv(r.getAssunto()));
+        writer.write(',');
+        writer.write(r.getStatus() != null ? r.getStatus().name() : "");
+        writer.write(',');
+        writer.write(csv(r.getErro()));
+        writer.write(',');
+        writer.write(r.getDataHora() != null ? r.getDataHora().toString() : "");
+        writer.write("\r\n");
+    }
+
+    // RFC 4180: aspas quando há separador, aspas ou quebra de linha; aspas internas dobradas
+    private static String csv(String valor) {
+        if (valor == null) {
+            return "";
+        }
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            return valor;
+        }
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,84 @@
+package com.notificacao.service;
+
+import com.notificacao.config.PooledJavaMailSender;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.AddressException;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSenderFailedException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Classifica a falha de um envio para decidir quem paga por ela.
+ *
+ * - PERMANENTE: resposta 5xx do servidor (destinatário/remetente/conteúdo recusado), endereço
+ *   inválido ou mensagem que não monta — o log vira FAILED na hora; o relay respondeu, então
+ *   não conta contra ele nem contra o circuit breaker;
+ * - SEM_CONEXAO_LIVRE: pool SMTP esgotado — o envio é adiado; o relay não falhou;
+ * - TRANSITORIA: conexão, transporte ou 4xx do servidor — conta como falha do relay e do
+ *   circuit breaker e o log é reagendado com backoff.
+ */
+enum FalhaSmtp {
+
+    PERMANENTE, SEM_CONEXAO_LIVRE, TRANSITORIA;
+
+    static FalhaSmtp de(Throwable ex) {
+        FalhaSmtp falha = procurar(ex, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return falha != null ? falha : TRANSITORIA;
+    }
+
+    // percorre causas, nextException e as falhas por mensagem do MailSendException
+    private static FalhaSmtp procurar(Throwable ex, Set<Throwable> vistos) {
+        if (ex == null || !vistos.add(ex)) {
+            return null;
+        }
+        if (ex instanceof PooledJavaMailSender.PoolEsgotadoException) {
+            return SEM_CONEXAO_LIVRE;
+        }
+        if (ex instanceof MailParseException || ex instanceof MailPreparationException || ex instanceof AddressException) {
+            return PERMANENTE;
+        }
+        int codigo = codigoSmtp(ex);
+        if (codigo >= 500) {
+            return PERMANENTE;
+        }
+        if (codigo >= 400) {
+            return TRANSITORIA;
+        }
+        if (ex instanceof MailSendException envio) {
+            for (Exception porMensagem : envio.getMessageExceptions()) {
+                FalhaSmtp falha = procurar(porMensagem, vistos);
+                if (falha != null) {
+                    return falha;
+                }
+            }
+        }
+        if (ex instanceof MessagingException me) {
+            FalhaSmtp falha = procurar(me.getNextException(), vistos);
+            if (falha != null) {
+                return falha;
+            }
+        }
+        return procurar(ex.getCause(), vistos);
+    }
+
+    private static int codigoSmtp(Throwable ex) {
+        if (ex instanceof SMTPAddressFailedException e) {
+            return e.getReturnCode();
+        }
+        if (ex instanceof SMTPSenderFailedException e) {
+            return e.getReturnCode();
+        }
+        if (ex instanceof SMTPSendFailedException e) {
+            return e.getReturnCode();
+        }
+        return -1;
+    }
+}
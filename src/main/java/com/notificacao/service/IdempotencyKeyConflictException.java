@@ -0,0 +1,9 @@
+package com.notificacao.service;
+
+/** Idempotency-Key já usada pelo mesmo usuário/endpoint com outro conteúdo (a API responde 422). */
+public class IdempotencyKeyConflictException extends RuntimeException {
+
+    public IdempotencyKeyConflictException() {
+        super("Idempotency-Key já usada com outra requisição");
+    }
+}
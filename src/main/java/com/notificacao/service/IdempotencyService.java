@@ -0,0 +1,264 @@
+package com.notificacao.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.notificacao.model.EmailLog;
+import com.notificacao.model.EmailStatus;
+import com.notificacao.repository.EmailLogRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Idempotência dos envios (header Idempotency-Key).
+ *
+ * - a chave gravada é o SHA-256 de (usuário, endpoint, chave do cliente): a mesma chave
+ *   usada por outro usuário ou em outro endpoint é outra chave;
+ * - junto vai o hash da requisição: repetir a chave com outro conteúdo é recusado
+ *   ({@link IdempotencyKeyConflictException}, 422) em vez de devolver o envio alheio;
+ * - cache LRU limitado de chaves recentes → (id do log, hash da requisição, status): a
+ *   repetição não passa pelo lock nem pelo INSERT e, com status final, nem pelo banco; com
+ *   status em andamento só o status é relido;
+ * - locks listrados (hash da chave): requisições concorrentes com a mesma chave
+ *   são serializadas e colapsam num único envio;
+ * - a chave nova consultada no banco fica marcada como ausente: o {@link #executar} que vem
+ *   logo depois (após a admissão) não repete a consulta dentro do lock;
+ * - entre instâncias (ou após o cache esquecer), o índice único de
+ *   EmailLog.chaveIdempotencia barra o INSERT duplicado e o log existente é devolvido.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String SEND = "send";
+    public static final String RETRY = "retry";
+
+    private static final int LISTRAS = 64; // potência de 2
+
+    // status que não mudam mais: servidos direto do cache
+    private static final Set<EmailStatus> FINAIS = EnumSet.of(EmailStatus.SUCCESS, EmailStatus.FAILED, EmailStatus.DIGESTED);
+
+    /** Chave já escopada e hash da requisição que a usou. */
+    public record Chave(String valor, String hashRequisicao) {}
+
+    /** O que a repetição devolve: id e status do log já criado com a chave. */
+    public record Resposta(Long id, EmailStatus status) {
+
+        public static Resposta de(EmailLog log) {
+            return new Resposta(log.getId(), log.getStatus());
+        }
+    }
+
+    // logId null = chave consultada no banco e ainda sem log
+    private record Lembrado(Long logId, String hashRequisicao, EmailStatus status) {
+
+        boolean ausente() {
+            return logId == null;
+        }
+    }
+
+    private final EmailLogRepository emailLogRepository;
+    private final ObjectMapper canonico;
+    private final ReentrantLock[] listras = new ReentrantLock[LISTRAS];
+
+    private final ReentrantLock lockCache = new ReentrantLock();
+    private final LinkedHashMap<String, Lembrado> recentes;
+
+    private final Counter hits;
+    private final Counter duplicadasNoBanco;
+    private final Counter conflitos;
+
+    public IdempotencyService(EmailLogRepository emailLogRepository,
+                              MeterRegistry registry,
+                              @Value("${mailnotify.idempotency.cache-size:10000}") int tamanhoCache) {
+        this.emailLogRepository = emailLogRepository;
+        // JSON canônico (propriedades e mapas ordenados): o mesmo request sempre dá o mesmo hash
+        // (módulos do classpath e datas ISO, como o mapper do Spring: os hashes já gravados continuam valendo)
+        this.canonico = JsonMapper.builder()
+                .findAndAddModules()
+                .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+                .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        for (int i = 0; i < LISTRAS; i++) {
+            listras[i] = new ReentrantLock();
+        }
+        this.recentes = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Lembrado> maisAntigo) {
+                return size() > tamanhoCache;
+            }
+        };
+        this.hits = Counter.builder("mailnotify.idempotency.duplicates").tag("source", "cache").register(registry);
+        this.duplicadasNoBanco = Counter.builder("mailnotify.idempotency.duplicates").tag("source", "db").register(registry);
+        this.conflitos = Counter.builder("mailnotify.idempotency.conflicts")
+                .description("Idempotency-Key reutilizada com outra requisição").register(registry);
+    }
+
+    /**
+     * Escopa a chave do cliente por usuário e endpoint e calcula o hash da requisição.
+     * Chave null/vazia = sem deduplicação (devolve null).
+     */
+    public Chave chave(String usuario, String endpoint, String chaveCliente, Object requisicao) {
+        if (chaveCliente == null || chaveCliente.isBlank()) {
+            return null;
+        }
+        String valor = sha256((usuario != null ? usuario : "") + "\n" + endpoint + "\n" + chaveCliente);
+        try {
+            return new Chave(valor, sha256(canonico.writeValueAsString(requisicao)));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("requisição não serializável", ex);
+        }
+    }
+
+    /**
+     * Id e status do log já criado com esta chave, ou vazio se a chave é nova. Vem do cache
+     * quando possível; só o status em andamento é relido do banco.
+     * Lança {@link IdempotencyKeyConflictException} se a chave foi usada com outra requisição.
+     */
+    public Optional<Resposta> repeticao(Chave chave) {
+        if (chave == null) {
+            return Optional.empty();
+        }
+        Optional<Resposta> lembrada = repeticaoEmCache(chave);
+        if (lembrada.isPresent()) {
+            return lembrada;
+        }
+        return repeticaoNoBanco(chave);
+    }
+
+    /**
+     * Executa {@code acao} (que cria o log, já com a chave e o hash gravados) no máximo uma vez por chave.
+     *
+     * @param chave     chave escopada ({@link #chave}); null = sem deduplicação por chave
+     * @param chaveLock chave que serializa a ação (normalmente a própria chave)
+     * @param acao      deve abrir e COMMITAR a própria transação, para o lock cobrir o commit
+     */
+    public Resposta executar(Chave chave, String chaveLock, Supplier<EmailLog> acao) {
+        if (chave != null) {
+            Optional<Resposta> lembrada = repeticaoEmCache(chave);
+            if (lembrada.isPresent()) {
+                return lembrada.get();
+            }
+        }
+
+        ReentrantLock lock = listras[(chaveLock.hashCode() & 0x7fffffff) & (LISTRAS - 1)];
+        lock.lock();
+        try {
+            if (chave != null) {
+                // ausente = repeticao() já consultou o banco antes da admissão; se outra instância
+                // gravou a chave desde então, o índice único barra o INSERT
+                Lembrado lembrado = lembrado(chave.valor());
+                Optional<Resposta> anterior = lembrado != null && lembrado.ausente() ? Optional.empty() : repeticao(chave);
+                if (anterior.isPresent()) {
+                    return anterior.get();
+                }
+            }
+            try {
+                EmailLog log = acao.get();
+                if (chave != null) {
+                    lembrar(chave.valor(), log);
+                }
+                return Resposta.de(log);
+            } catch (DataIntegrityViolationException ex) {
+                // outra instância gravou a chave entre a consulta e o INSERT
+                if (chave == null) {
+                    throw ex;
+                }
+                return repeticaoNoBanco(chave).orElseThrow(() -> ex);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Optional<Resposta> repeticaoEmCache(Chave chave) {
+        Lembrado lembrado = lembrado(chave.valor());
+        if (lembrado == null || lembrado.ausente()) {
+            return Optional.empty();
+        }
+        conferir(chave, lembrado.hashRequisicao());
+        if (FINAIS.contains(lembrado.status())) {
+            hits.increment();
+            return Optional.of(new Resposta(lembrado.logId(), lembrado.status()));
+        }
+        // ainda em andamento: relê só o status (vazio se o log sumiu; aí vale o banco)
+        Optional<EmailStatus> status = emailLogRepository.findStatusById(lembrado.logId());
+        status.ifPresent(s -> {
+            hits.increment();
+            lembrar(chave.valor(), new Lembrado(lembrado.logId(), lembrado.hashRequisicao(), s));
+        });
+        return status.map(s -> new Resposta(lembrado.logId(), s));
+    }
+
+    private Optional<Resposta> repeticaoNoBanco(Chave chave) {
+        Optional<EmailLog> existente = emailLogRepository.findByChaveIdempotencia(chave.valor());
+        if (existente.isEmpty()) {
+            lembrar(chave.valor(), new Lembrado(null, chave.hashRequisicao(), null));
+            return Optional.empty();
+        }
+        EmailLog log = existente.get();
+        conferir(chave, log.getHashRequisicao());
+        duplicadasNoBanco.increment();
+        lembrar(chave.valor(), log);
+        return Optional.of(Resposta.de(log));
+    }
+
+    private void conferir(Chave chave, String hashGravado) {
+        if (!Objects.equals(chave.hashRequisicao(), hashGravado)) {
+            conflitos.increment();
+            throw new IdempotencyKeyConflictException();
+        }
+    }
+
+    private Lembrado lembrado(String chave) {
+        lockCache.lock();
+        try {
+            return recentes.get(chave);
+        } finally {
+            lockCache.unlock();
+        }
+    }
+
+    private void lembrar(String chave, EmailLog log) {
+        if (log == null || log.getId() == null || !chave.equals(log.getChaveIdempotencia())) {
+            return; // p.ex. reenvio de um log já SUCCESS: devolve o original, que não tem esta chave
+        }
+        lembrar(chave, new Lembrado(log.getId(), log.getHashRequisicao(), log.getStatus()));
+    }
+
+    private void lembrar(String chave, Lembrado lembrado) {
+        lockCache.lock();
+        try {
+            recentes.put(chave, lembrado);
+        } finally {
+            lockCache.unlock();
+        }
+    }
+
+    private static String sha256(String texto) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(texto.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
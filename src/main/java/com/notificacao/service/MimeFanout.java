@@ -0,0 +1,282 @@
+package com.notificacao.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Fan-out: o mesmo anúncio para milhares de destinatários é montado e codificado
+ * (MIME + quoted-printable/base64) uma única vez — inclusive os anexos: um PDF de 20 MB
+ * vira base64 uma vez, não uma vez por destinatário.
+ *
+ * O cache LRU é indexado pela identidade do corpo (hash do corpo_email, ou template +
+ * versão), pelo assunto e pelos ids dos anexos — strings curtas, nunca o corpo inteiro.
+ * O corpo só é carregado/renderizado num miss; cada cópia só acrescenta To/Date/Message-ID
+ * (ver {@code FanoutMimeMessage}).
+ *
+ * Sem anexos, os bytes codificados ficam no heap (teto em bytes para o cache inteiro).
+ * Com anexos, nada passa inteiro pelo heap: a mensagem é codificada em streaming para um
+ * arquivo no spool de anexos e cada cópia é escrita do arquivo para o socket. O tamanho é
+ * estimado pelos tamanhos dos anexos antes de codificar; acima do limite não há fan-out e
+ * a cópia segue pelo caminho normal (anexos lidos do disco em streaming).
+ */
+@Component
+public class MimeFanout {
+
+    private static final Logger log = LoggerFactory.getLogger(MimeFanout.class);
+
+    // cabeçalhos que variam por cópia: ficam fora dos bytes compartilhados
+    private static final String[] POR_COPIA = {"To", "Cc", "Bcc", "Date", "Message-ID"};
+    private static final Session SESSAO = Session.getInstance(new Properties());
+
+    /**
+     * Identidade de um corpo sem variáveis por destinatário: {@code origem} é o corpoHash
+     * (com {@code versao} null) ou o id do template (com a versão do template).
+     * {@code anexos} (nome exibido → id, que é o SHA-256 do arquivo) null = sem anexos.
+     */
+    public record Chave(String origem, String versao, String assunto, Map<String, String> anexos) {}
+
+    /** Corpo a codificar num miss; {@code html} null = só text/plain. */
+    public record Conteudo(String texto, String html, List<AttachmentStore.Arquivo> anexos) {}
+
+    /** Corpo codificado compartilhado: {@code bytes} no heap (sem anexos) ou {@code arquivo} no spool (com anexos). */
+    public record Codificado(byte[] bytes, Path arquivo) {
+        long emMemoria() {
+            return bytes != null ? bytes.length : 0;
+        }
+    }
+
+    private final boolean habilitado;
+    private final int maxBytes;
+    private final long maxBytesComAnexos;
+    private final long maxBytesCache;
+    private final AttachmentStore attachmentStore;
+    private long bytesEmCache;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Chave, Codificado> cache;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public MimeFanout(AttachmentStore attachmentStore,
+                      @Value("${mailnotify.fanout.enabled:true}") boolean habilitado,
+                      @Value("${mailnotify.fanout.cache-size:32}") int tamanhoCache,
+                      @Value("${mailnotify.fanout.max-body-bytes:1048576}") int maxBytes,
+                      @Value("${mailnotify.fanout.max-attachment-body-bytes:33554432}") long maxBytesComAnexos,
+                      @Value("${mailnotify.fanout.max-cache-bytes:33554432}") long maxBytesCache,
+                      MeterRegistry registry) {
+        this.attachmentStore = attachmentStore;
+        this.habilitado = habilitado;
+        this.maxBytes = maxBytes;
+        this.maxBytesComAnexos = maxBytesComAnexos;
+        this.maxBytesCache = maxBytesCache;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Chave, Codificado> maisAntigo) {
+                if (size() > tamanhoCache) {
+                    descartar(maisAntigo.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.hits = Counter.builder("mailnotify.fanout.body").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("mailnotify.fanout.body").tag("result", "miss").register(registry);
+    }
+
+    /**
+     * Corpo compartilhado (cabeçalhos comuns + corpo codificado) para este corpo, ou null
+     * se o fan-out estiver desligado ou o corpo for grande demais para o cache.
+     * {@code conteudo} só é chamado num miss.
+     */
+    public Codificado corpo(Chave chave, Supplier<Conteudo> conteudo) {
+        if (!habilitado) {
+            return null;
+        }
+        lock.lock();
+        try {
+            Codificado existente = cache.get(chave);
+            // arquivo apagado por fora (GC do spool após a carência): vira miss
+            if (existente != null && existente.arquivo() != null && !Files.exists(existente.arquivo())) {
+                cache.remove(chave);
+                descartar(existente);
+                existente = null;
+            }
+            if (existente != null) {
+                hits.increment();
+                return existente;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // codifica fora do lock; duas threads podem codificar o mesmo corpo — fica a primeira
+        misses.increment();
+        Conteudo c = conteudo.get();
+        Codificado novo;
+        if (c.anexos().isEmpty()) {
+            byte[] bytes = codificar(chave.assunto(), c);
+            if (bytes.length > maxBytes || bytes.length > maxBytesCache) {
+                return null;
+            }
+            novo = new Codificado(bytes, null);
+        } else {
+            // decide pelo tamanho estimado antes de codificar um byte
+            if (estimativa(c) > maxBytesComAnexos) {
+                return null;
+            }
+            novo = new Codificado(null, codificarEmArquivo(chave.assunto(), c));
+        }
+
+        lock.lock();
+        try {
+            Codificado existente = cache.get(chave);
+            if (existente != null) {
+                descartar(novo);
+                return existente;
+            }
+            cache.put(chave, novo);
+            bytesEmCache += novo.emMemoria();
+            // acima do teto em bytes: descarta as mais antigas (nunca a que acabou de entrar)
+            var it = cache.entrySet().iterator();
+            while (bytesEmCache > maxBytesCache && it.hasNext()) {
+                Map.Entry<Chave, Codificado> maisAntigo = it.next();
+                if (maisAntigo.getKey().equals(chave)) {
+                    break;
+                }
+                descartar(maisAntigo.getValue());
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return novo;
+    }
+
+    // chamado com o lock (ou já fora do cache); um envio ainda escrevendo o arquivo mantém o descritor aberto
+    private void descartar(Codificado codificado) {
+        bytesEmCache -= codificado.emMemoria();
+        if (codificado.arquivo() != null) {
+            try {
+                Files.deleteIfExists(codificado.arquivo());
+            } catch (IOException ex) {
+                log.warn("Não foi possível apagar o corpo compartilhado {}", codificado.arquivo());
+            }
+        }
+    }
+
+    @PreDestroy
+    void limpar() {
+        lock.lock();
+        try {
+            new ArrayList<>(cache.values()).forEach(this::descartar);
+            cache.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Corpo pronto vira text/plain; com html vira text/plain + text/html (multipart/alternative). */
+    static void preencher(MimeMessage mime, String destinatario, String assunto, String texto, String html)
+            throws MessagingException {
+        preencher(mime, destinatario, assunto, texto, html, List.of());
+    }
+
+    /**
+     * Com anexos vira multipart/mixed; cada anexo é um {@link FileSystemResource}, lido do
+     * disco só quando a mensagem é escrita no socket (base64 em streaming, sem byte[] inteiro).
+     */
+    static void preencher(MimeMessage mime, String destinatario, String assunto, String texto, String html,
+                          List<AttachmentStore.Arquivo> anexos) throws MessagingException {
+        boolean multipart = html != null || !anexos.isEmpty();
+        MimeMessageHelper helper = new MimeMessageHelper(mime, multipart, "UTF-8");
+        if (destinatario != null) {
+            helper.setTo(destinatario);
+        }
+        helper.setSubject(assunto);
+        if (html != null && texto != null) {
+            helper.setText(texto, html);
+        } else if (html != null) {
+            helper.setText(html, true);
+        } else {
+            helper.setText(texto);
+        }
+        for (AttachmentStore.Arquivo anexo : anexos) {
+            helper.addAttachment(anexo.nome(), new FileSystemResource(anexo.caminho()), anexo.contentType());
+        }
+    }
+
+    private static byte[] codificar(String assunto, Conteudo c) {
+        try {
+            MimeMessage mime = mensagem(assunto, c);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) estimativa(c));
+            mime.writeTo(out, POR_COPIA);
+            return out.toByteArray();
+        } catch (MessagingException | IOException ex) {
+            throw new MailPreparationException("Falha ao codificar o corpo compartilhado", ex);
+        }
+    }
+
+    // anexos vão do disco para o arquivo em blocos (FileSystemResource + base64 em streaming)
+    private Path codificarEmArquivo(String assunto, Conteudo c) {
+        Path arquivo = null;
+        try {
+            MimeMessage mime = mensagem(assunto, c);
+            arquivo = attachmentStore.spoolTemporario("fanout-");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(arquivo))) {
+                mime.writeTo(out, POR_COPIA);
+            }
+            return arquivo;
+        } catch (MessagingException | IOException ex) {
+            if (arquivo != null) {
+                try {
+                    Files.deleteIfExists(arquivo);
+                } catch (IOException ignorada) {
+                    // o GC do spool apaga depois
+                }
+            }
+            throw new MailPreparationException("Falha ao codificar o corpo compartilhado", ex);
+        }
+    }
+
+    private static MimeMessage mensagem(String assunto, Conteudo c) throws MessagingException {
+        MimeMessage mime = new MimeMessage(SESSAO);
+        preencher(mime, null, assunto, c.texto(), c.html(), c.anexos());
+        mime.saveChanges();
+        return mime;
+    }
+
+    // tamanho codificado esperado: texto/html + base64 dos anexos (linhas de 76 = 57 bytes + CRLF)
+    private static long estimativa(Conteudo c) {
+        long tamanho = (c.texto() != null ? c.texto().length() : 0) + (c.html() != null ? c.html().length() : 0) + 1024;
+        for (AttachmentStore.Arquivo anexo : c.anexos()) {
+            tamanho += (anexo.tamanho() + 2) / 3 * 4 + (anexo.tamanho() / 57 + 1) * 2 + 512;
+        }
+        return tamanho;
+    }
+}
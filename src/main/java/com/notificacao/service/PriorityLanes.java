@@ -0,0 +1,110 @@
+package com.notificacao.service;
+
+import com.notificacao.model.Prioridade;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Uma fila limitada por {@link Prioridade}, consumida por weighted round-robin
+ * suave (o mesmo do nginx): entre as filas não vazias, cada uma recebe uma fatia
+ * proporcional ao seu peso, sem rajadas. Workers reservados só consomem CRITICAL.
+ *
+ * Todas as operações são O(1) sob um único lock (ReentrantLock, sem pinning).
+ */
+class PriorityLanes {
+
+    private static final Prioridade[] PRIORIDADES = Prioridade.values();
+
+    private final ArrayDeque<Long>[] filas;
+    private final int[] capacidades;
+    private final int[] pesos;
+    private final int[] creditos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition temTrabalho = lock.newCondition();
+
+    @SuppressWarnings("unchecked")
+    PriorityLanes(int[] capacidades, int[] pesos) {
+        this.filas = new ArrayDeque[PRIORIDADES.length];
+        for (int i = 0; i < filas.length; i++) {
+            filas[i] = new ArrayDeque<>(Math.min(capacidades[i], 1024));
+        }
+        this.capacidades = capacidades.clone();
+        this.pesos = pesos.clone();
+        this.creditos = new int[PRIORIDADES.length];
+    }
+
+    /** false se a fila da prioridade estiver cheia. */
+    boolean oferecer(Prioridade prioridade, Long id) {
+        int i = prioridade.ordinal();
+        lock.lock();
+        try {
+            if (filas[i].size() >= capacidades[i]) {
+                return false;
+            }
+            filas[i].addLast(id);
+            temTrabalho.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bloqueia até haver trabalho; {@code soCritico} = worker reservado. */
+    Long proximo(boolean soCritico) throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                Long id = soCritico ? filas[Prioridade.CRITICAL.ordinal()].pollFirst() : escolher();
+                if (id != null) {
+                    return id;
+                }
+                temTrabalho.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int livre(Prioridade prioridade) {
+        int i = prioridade.ordinal();
+        lock.lock();
+        try {
+            return capacidades[i] - filas[i].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int tamanho(Prioridade prioridade) {
+        lock.lock();
+        try {
+            return filas[prioridade.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // smooth weighted round-robin entre as filas não vazias
+    private Long escolher() {
+        int total = 0;
+        int melhor = -1;
+        for (int i = 0; i < filas.length; i++) {
+            if (filas[i].isEmpty()) {
+                continue;
+            }
+            creditos[i] += pesos[i];
+            total += pesos[i];
+            if (melhor < 0 || creditos[i] > creditos[melhor]) {
+                melhor = i;
+            }
+        }
+        if (melhor < 0) {
+            return null;
+        }
+        creditos[melhor] -= total;
+        return filas[melhor].pollFirst();
+    }
+}
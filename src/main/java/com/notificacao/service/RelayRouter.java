@@ -0,0 +1,190 @@
+package com.notificacao.service;
+
+import com.notificacao.config.PooledJavaMailSender;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Roteia cada envio para um dos relays SMTP configurados.
+ *
+ * - escolha por menor latência ponderada: latência média (EWMA) x envios em voo / peso;
+ * - após N falhas seguidas o relay é ejetado e só volta depois de passar numa
+ *   sondagem (connect + NOOP) feita em background;
+ * - se o relay escolhido falhar, o mesmo envio tenta os demais (failover); só falhas de
+ *   conexão/transporte/4xx contam para a ejeção (ver {@link FalhaSmtp}).
+ */
+public class RelayRouter implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RelayRouter.class);
+
+    private final List<Relay> relays;
+    private final int ejetarAposFalhas;
+    private final long ejecaoMs;
+
+    /** @param pesos sender de cada relay → peso (use um LinkedHashMap para manter a ordem) */
+    public RelayRouter(Map<PooledJavaMailSender, Integer> pesos,
+                       int ejetarAposFalhas, long ejecaoMs, MeterRegistry registry) {
+        this.ejetarAposFalhas = ejetarAposFalhas;
+        this.ejecaoMs = ejecaoMs;
+        List<Relay> lista = new ArrayList<>(pesos.size());
+        pesos.forEach((sender, peso) -> lista.add(new Relay(sender, Math.max(1, peso), registry)));
+        this.relays = List.copyOf(lista);
+    }
+
+    /** Envia pelo melhor relay disponível, com failover. Retorna o nome do relay que entregou. */
+    public String enviar(MimeMessagePreparator msg) {
+        return enviar(msg, false);
+    }
+
+    /** Igual a {@link #enviar(MimeMessagePreparator)}; {@code critico} usa as conexões reservadas do pool. */
+    public String enviar(MimeMessagePreparator msg, boolean critico) {
+        List<Relay> tentados = new ArrayList<>(relays.size());
+        MailException ultima = null;
+
+        Relay relay;
+        while ((relay = escolher(tentados)) != null) {
+            tentados.add(relay);
+            long inicio = System.nanoTime();
+            relay.emVoo.incrementAndGet();
+            try {
+                relay.sender.send(msg, critico);
+                relay.sucesso(System.nanoTime() - inicio);
+                return relay.nome;
+            } catch (MailException ex) {
+                switch (FalhaSmtp.de(ex)) {
+                    // mensagem inválida ou 5xx: o relay respondeu, outro recusaria igual
+                    case PERMANENTE -> throw ex;
+                    // sem conexão livre neste relay: tenta outro, sem contar falha
+                    case SEM_CONEXAO_LIVRE -> ultima = ex;
+                    case TRANSITORIA -> {
+                        relay.falha(System.nanoTime() - inicio);
+                        ultima = ex;
+                    }
+                }
+            } finally {
+                relay.emVoo.decrementAndGet();
+            }
+        }
+
+        if (ultima != null) {
+            throw ultima;
+        }
+        throw new MailSendException("Nenhum relay SMTP disponível");
+    }
+
+    private Relay escolher(List<Relay> excluir) {
+        Relay melhor = null;
+        double menorCusto = Double.MAX_VALUE;
+        for (Relay relay : relays) {
+            if (relay.ejetadoAte != 0 || excluir.contains(relay)) {
+                continue;
+            }
+            double custo = relay.custo();
+            if (custo < menorCusto) {
+                menorCusto = custo;
+                melhor = relay;
+            }
+        }
+        return melhor;
+    }
+
+    /** Sonda (connect + NOOP) os relays ejetados cujo tempo de ejeção venceu. */
+    @Scheduled(fixedDelayString = "${mailnotify.smtp.probe-interval-ms:10000}")
+    public void sondar() {
+        long agora = System.currentTimeMillis();
+        for (Relay relay : relays) {
+            if (relay.ejetadoAte == 0 || relay.ejetadoAte > agora) {
+                continue;
+            }
+            try {
+                relay.sender.testConnection();
+                relay.falhasSeguidas.set(0);
+                relay.ejetadoAte = 0;
+                log.info("Relay SMTP {} voltou ao roteamento", relay.nome);
+            } catch (Exception ex) {
+                relay.ejetadoAte = System.currentTimeMillis() + ejecaoMs;
+                log.debug("Sondagem do relay {} falhou: {}", relay.nome, ex.getMessage());
+            }
+        }
+    }
+
+    /** Fecha as conexões ociosas vencidas de todos os pools. */
+    @Scheduled(fixedDelayString = "${mailnotify.smtp.pool.evict-interval-ms:30000}")
+    public void evictIdle() {
+        relays.forEach(r -> r.sender.evictIdle());
+    }
+
+    @Override
+    public void destroy() {
+        relays.forEach(r -> r.sender.destroy());
+    }
+
+    private final class Relay {
+        final String nome;
+        final int peso;
+        final PooledJavaMailSender sender;
+
+        final AtomicInteger emVoo = new AtomicInteger();
+        final AtomicInteger falhasSeguidas = new AtomicInteger();
+        // 0 = saudável; senão, instante (ms) a partir do qual pode ser sondado
+        volatile long ejetadoAte;
+        // estimativa; atualizações concorrentes podem se perder sem prejuízo
+        volatile double latenciaMs = 100;
+
+        final Counter enviados;
+        final Counter falhas;
+        final Timer latencia;
+
+        Relay(PooledJavaMailSender sender, int peso, MeterRegistry registry) {
+            this.nome = sender.getRelay();
+            this.peso = peso;
+            this.sender = sender;
+            this.enviados = Counter.builder("mailnotify.relay.sends")
+                    .tag("relay", nome).tag("result", "success").register(registry);
+            this.falhas = Counter.builder("mailnotify.relay.sends")
+                    .tag("relay", nome).tag("result", "failure").register(registry);
+            this.latencia = Timer.builder("mailnotify.relay.latency")
+                    .tag("relay", nome).register(registry);
+            Gauge.builder("mailnotify.relay.healthy", this, r -> r.ejetadoAte == 0 ? 1 : 0)
+                    .tag("relay", nome).register(registry);
+            Gauge.builder("mailnotify.relay.inflight", emVoo, AtomicInteger::get)
+                    .tag("relay", nome).register(registry);
+        }
+
+        double custo() {
+            return latenciaMs * (emVoo.get() + 1) / peso;
+        }
+
+        void sucesso(long nanos) {
+            enviados.increment();
+            latencia.record(nanos, TimeUnit.NANOSECONDS);
+            latenciaMs = 0.8 * latenciaMs + 0.2 * (nanos / 1_000_000.0);
+            falhasSeguidas.set(0);
+        }
+
+        void falha(long nanos) {
+            falhas.increment();
+            latencia.record(nanos, TimeUnit.NANOSECONDS);
+            if (falhasSeguidas.incrementAndGet() >= ejetarAposFalhas && ejetadoAte == 0) {
+                ejetadoAte = System.currentTimeMillis() + ejecaoMs;
+                log.warn("Relay SMTP {} ejetado após {} falhas seguidas", nome, falhasSeguidas.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.notificacao.service;
+
+import com.notificacao.model.EmailLog;
+import com.notificacao.model.Prioridade;
+import com.notificacao.repository.EmailLogRepository;
+import com.notificacao.repository.EmailLogRepository.Agendado;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static com.notificacao.model.EmailStatus.PENDING;
+
+/**
+ * Envios agendados (sendAt).
+ *
+ * - horizonte próximo ({@code horizonteMs}, p.ex. 1h) numa {@link TimingWheel} em memória:
+ *   o log vai para a fila do dispatcher no milissegundo em que vence;
+ * - horizonte distante fica só no banco (índice status + proximaTentativa) e é
+ *   carregado aos poucos, conforme o horizonte avança.
+ *
+ * A wheel é só um acelerador: o polling do dispatcher continua pegando qualquer
+ * agendado vencido que ela não tenha entregue (restart, fila cheia, corrida na carga).
+ */
+@Component
+public class SendScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(SendScheduler.class);
+
+    private final EmailLogRepository emailLogRepository;
+    private final EmailDispatcher dispatcher;
+    private final long horizonteMs;
+    private final int lote;
+
+    private final TimingWheel roda;
+    private final Thread relogio;
+
+    // agendados até este instante (epoch ms) já estão na wheel; os posteriores, só no banco
+    private volatile long carregadoAteMs;
+
+    public SendScheduler(EmailLogRepository emailLogRepository,
+                         EmailDispatcher dispatcher,
+                         MeterRegistry registry,
+                         @Value("${mailnotify.schedule.horizon-ms:3600000}") long horizonteMs,
+                         @Value("${mailnotify.schedule.load-batch-size:1000}") int lote) {
+        this.emailLogRepository = emailLogRepository;
+        this.dispatcher = dispatcher;
+        this.horizonteMs = horizonteMs;
+        this.lote = lote;
+        long agora = System.currentTimeMillis();
+        // 1ms x 64 slots no nível 0; níveis de 64ms, ~4s, ~4min, ~4,6h criados sob demanda
+        this.roda = new TimingWheel(1, 64, agora);
+        this.carregadoAteMs = agora;
+        this.relogio = Thread.ofPlatform().name("mail-schedule").daemon().unstarted(this::rodar);
+        Gauge.builder("mailnotify.schedule.wheel", roda, TimingWheel::tamanho)
+                .description("Envios agendados aguardando na timing wheel").register(registry);
+    }
+
+    @PostConstruct
+    void iniciar() {
+        relogio.start();
+    }
+
+    /** Agenda o log (já com enviarEm/proximaTentativa no futuro) depois do commit. */
+    public void agendarAposCommit(EmailLog emailLog) {
+        agendarAposCommit(List.of(emailLog));
+    }
+
+    public void agendarAposCommit(List<EmailLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        long[] ids = new long[logs.size()];
+        Prioridade[] prioridades = new Prioridade[ids.length];
+        long[] vencimentos = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            EmailLog l = logs.get(i);
+            ids[i] = l.getId();
+            prioridades[i] = l.getPrioridade();
+            vencimentos[i] = epochMs(l.getProximaTentativa());
+        }
+        Runnable agendar = () -> {
+            for (int i = 0; i < ids.length; i++) {
+                agendar(ids[i], prioridades[i], vencimentos[i]);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    agendar.run();
+                }
+            });
+        } else {
+            agendar.run();
+        }
+    }
+
+    /** Avança o horizonte: traz para a wheel os agendados que passaram a caber nele. */
+    @Scheduled(fixedDelayString = "${mailnotify.schedule.load-interval-ms:60000}")
+    public void carregarHorizonte() {
+        LocalDateTime de = localDateTime(carregadoAteMs);
+        long ateMs = System.currentTimeMillis() + horizonteMs;
+        LocalDateTime ate = localDateTime(ateMs);
+        // avança antes de ler: um agendamento concorrente entra direto na wheel e, no
+        // pior caso, também vem na consulta — o dispatcher descarta o repetido
+        carregadoAteMs = ateMs;
+
+        int pagina = 0;
+        List<Agendado> agendados;
+        do {
+            agendados = emailLogRepository.findAgendados(PENDING, de, ate, PageRequest.of(pagina++, lote));
+            for (Agendado a : agendados) {
+                agendar(a.getId(), a.getPrioridade(), epochMs(a.getProximaTentativa()));
+            }
+        } while (agendados.size() == lote);
+    }
+
+    private void agendar(long id, Prioridade prioridade, long vencimentoMs) {
+        if (vencimentoMs > carregadoAteMs) {
+            return; // além do horizonte: fica no banco até a próxima carga
+        }
+        Prioridade p = prioridade != null ? prioridade : Prioridade.NORMAL;
+        if (!roda.agendar(new TimingWheel.Entrada(id, p, vencimentoMs))) {
+            dispatcher.enfileirar(id, p);
+        }
+    }
+
+    private void rodar() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                for (TimingWheel.Entrada vencida : roda.proximasVencidas()) {
+                    // fila cheia: o log continua PENDING e sai pelo polling
+                    dispatcher.enfileirar(vencida.id(), vencida.prioridade());
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception ex) {
+                log.error("Falha ao liberar envios agendados", ex);
+            }
+        }
+    }
+
+    private static long epochMs(LocalDateTime quando) {
+        return quando == null ? 0 : quando.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime localDateTime(long epochMs) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMs), ZoneId.systemDefault());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        relogio.interrupt();
+    }
+}
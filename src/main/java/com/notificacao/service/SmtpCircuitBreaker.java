@@ -0,0 +1,222 @@
+package com.notificacao.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker em volta do envio SMTP.
+ *
+ * - CLOSED: registra o resultado das últimas {@code janela} chamadas; abre se a taxa
+ *   de falhas ou de chamadas lentas passar do limite (com um mínimo de chamadas);
+ * - OPEN: nenhum envio é tentado — o dispatcher deixa os logs PENDING/RETRYING sem
+ *   gastar tentativa — até {@code abertoMs} passar;
+ * - HALF_OPEN: deixa passar no máximo {@code sondas} envios; se todos derem certo
+ *   fecha, se qualquer um falhar abre de novo.
+ */
+@Component
+public class SmtpCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(SmtpCircuitBreaker.class);
+
+    public enum Estado { CLOSED, OPEN, HALF_OPEN }
+
+    private final int minimoChamadas;
+    private final double limiteFalhas;
+    private final long lentaNanos;
+    private final double limiteLentas;
+    private final long abertoMs;
+    private final int sondas;
+
+    // janela circular: 0 = ok, 1 = falha, 2 = lenta, 3 = falha lenta (bits)
+    private final byte[] janela;
+    private int posicao;
+    private int preenchidas;
+    private int falhas;
+    private int lentas;
+
+    private volatile Estado estado = Estado.CLOSED;
+    private volatile long abertoAte;
+    private final AtomicInteger sondasLivres = new AtomicInteger();
+    private final AtomicInteger sondasOk = new AtomicInteger();
+
+    // seção crítica curta e sem I/O; ReentrantLock para não prender carrier de virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final MeterRegistry registry;
+    private final Counter rejeitadas;
+
+    public SmtpCircuitBreaker(@Value("${mailnotify.circuit.window-size:20}") int janela,
+                              @Value("${mailnotify.circuit.minimum-calls:10}") int minimoChamadas,
+                              @Value("${mailnotify.circuit.failure-rate-threshold:50}") double limiteFalhas,
+                              @Value("${mailnotify.circuit.slow-call-ms:10000}") long lentaMs,
+                              @Value("${mailnotify.circuit.slow-call-rate-threshold:80}") double limiteLentas,
+                              @Value("${mailnotify.circuit.open-ms:30000}") long abertoMs,
+                              @Value("${mailnotify.circuit.half-open-probes:3}") int sondas,
+                              MeterRegistry registry) {
+        this.janela = new byte[janela];
+        this.minimoChamadas = Math.min(minimoChamadas, janela);
+        this.limiteFalhas = limiteFalhas;
+        this.lentaNanos = TimeUnit.MILLISECONDS.toNanos(lentaMs);
+        this.limiteLentas = limiteLentas;
+        this.abertoMs = abertoMs;
+        this.sondas = sondas;
+        this.registry = registry;
+        this.rejeitadas = Counter.builder("mailnotify.circuit.rejected")
+                .description("Envios não tentados porque o circuito estava aberto")
+                .register(registry);
+        Gauge.builder("mailnotify.circuit.state", this, cb -> cb.estado.ordinal())
+                .description("0 = CLOSED, 1 = OPEN, 2 = HALF_OPEN")
+                .register(registry);
+    }
+
+    /** true se o envio pode ser tentado agora. */
+    public boolean permitir() {
+        Estado atual = estado;
+        if (atual == Estado.CLOSED) {
+            return true;
+        }
+        if (atual == Estado.OPEN) {
+            if (System.currentTimeMillis() < abertoAte) {
+                rejeitadas.increment();
+                return false;
+            }
+            lock.lock();
+            try {
+                if (estado == Estado.OPEN) {
+                    transicionar(Estado.HALF_OPEN);
+                    sondasLivres.set(sondas);
+                    sondasOk.set(0);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        // HALF_OPEN: só as sondas passam
+        if (sondasLivres.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0) {
+            return true;
+        }
+        rejeitadas.increment();
+        return false;
+    }
+
+    /** true enquanto nenhum envio deve nem ser enfileirado (aberto e ainda sem sondagem). */
+    public boolean aberto() {
+        return estado == Estado.OPEN && System.currentTimeMillis() < abertoAte;
+    }
+
+    /** Quanto falta (ms) para o circuito aceitar sondas; 0 se já aceita. */
+    public long msAteSondar() {
+        return estado == Estado.OPEN ? Math.max(0, abertoAte - System.currentTimeMillis()) : 0;
+    }
+
+    /** Registra o resultado de um envio liberado por {@link #permitir()}. */
+    public void registrar(boolean sucesso, long duracaoNanos) {
+        boolean lenta = duracaoNanos >= lentaNanos;
+        lock.lock();
+        try {
+            if (estado == Estado.HALF_OPEN) {
+                if (!sucesso || lenta) {
+                    abrir();
+                } else if (sondasOk.incrementAndGet() >= sondas) {
+                    limparJanela();
+                    transicionar(Estado.CLOSED);
+                }
+                return;
+            }
+            if (estado == Estado.OPEN) {
+                return; // resultado atrasado de uma chamada anterior à abertura
+            }
+
+            byte antigo = janela[posicao];
+            if (preenchidas == janela.length) {
+                falhas -= antigo & 1;
+                lentas -= (antigo >> 1) & 1;
+            } else {
+                preenchidas++;
+            }
+            byte novo = (byte) ((sucesso ? 0 : 1) | (lenta ? 2 : 0));
+            janela[posicao] = novo;
+            falhas += novo & 1;
+            lentas += (novo >> 1) & 1;
+            posicao = (posicao + 1) % janela.length;
+
+            if (preenchidas >= minimoChamadas
+                    && (taxa(falhas) >= limiteFalhas || taxa(lentas) >= limiteLentas)) {
+                abrir();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Devolve a permissão de um envio liberado por {@link #permitir()} que não chegou a
+     * testar o SMTP (p.ex. pool esgotado): em HALF_OPEN a sonda volta a ficar livre.
+     */
+    public void liberar() {
+        if (estado == Estado.HALF_OPEN) {
+            sondasLivres.updateAndGet(n -> Math.min(sondas, n + 1));
+        }
+    }
+
+    /** Estado atual para o endpoint do actuator. */
+    public Map<String, Object> snapshot() {
+        lock.lock();
+        try {
+            Map<String, Object> dados = new LinkedHashMap<>();
+            dados.put("estado", estado.name());
+            dados.put("chamadasNaJanela", preenchidas);
+            dados.put("taxaFalhas", taxa(falhas));
+            dados.put("taxaLentas", taxa(lentas));
+            dados.put("msAteSondar", msAteSondar());
+            dados.put("sondasLivres", estado == Estado.HALF_OPEN ? sondasLivres.get() : 0);
+            return dados;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    private double taxa(int quantidade) {
+        return preenchidas == 0 ? 0 : quantidade * 100.0 / preenchidas;
+    }
+
+    private void abrir() {
+        abertoAte = System.currentTimeMillis() + abertoMs;
+        limparJanela();
+        transicionar(Estado.OPEN);
+    }
+
+    private void limparJanela() {
+        Arrays.fill(janela, (byte) 0);
+        posicao = 0;
+        preenchidas = 0;
+        falhas = 0;
+        lentas = 0;
+    }
+
+    private void transicionar(Estado novo) {
+        Estado anterior = estado;
+        if (anterior == novo) {
+            return;
+        }
+        estado = novo;
+        registry.counter("mailnotify.circuit.transitions", "from", anterior.name(), "to", novo.name()).increment();
+        log.warn("Circuit breaker SMTP: {} -> {}", anterior, novo);
+    }
+}
@@ -0,0 +1,215 @@
+package com.notificacao.service;
+
+import com.notificacao.model.EmailTemplate;
+import com.notificacao.repository.EmailTemplateRepository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Templates nomeados (banco ou classpath), compilados uma vez e guardados num
+ * cache LRU limitado. Salvar um template invalida a entrada; o TTL cobre
+ * alterações feitas por outras instâncias.
+ *
+ * Cada template compilado tem uma versão: o SHA-256 do fonte (assunto, texto e html).
+ * Muda a cada edição e é igual entre instâncias para o mesmo conteúdo.
+ */
+@Service
+public class TemplateService {
+
+    private static final Pattern NOME_VALIDO = Pattern.compile("[a-zA-Z0-9_-]{1,100}");
+    private static final String PASTA = "classpath:templates/email/";
+
+    /**
+     * Resultado de uma renderização; {@code html} é null quando o template não tem versão HTML.
+     * {@code versao} é a versão do template usada.
+     */
+    public record Renderizado(String assunto, String texto, String html, String versao) {}
+
+    private record Compilado(CompiledTemplate assunto, CompiledTemplate texto, CompiledTemplate html,
+                             String versao, long carregadoEm) {}
+
+    private final EmailTemplateRepository templateRepository;
+    private final ResourceLoader resourceLoader;
+    private final long ttlMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Compilado> cache;
+
+    public TemplateService(EmailTemplateRepository templateRepository,
+                           ResourceLoader resourceLoader,
+                           @Value("${mailnotify.templates.cache-size:256}") int tamanhoCache,
+                           @Value("${mailnotify.templates.cache-ttl-ms:60000}") long ttlMs) {
+        this.templateRepository = templateRepository;
+        this.resourceLoader = resourceLoader;
+        this.ttlMs = ttlMs;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Compilado> maisAntigo) {
+                return size() > tamanhoCache;
+            }
+        };
+    }
+
+    public boolean existe(String nome) {
+        return compilado(nome).isPresent();
+    }
+
+    /** Só o assunto — usado ao registrar o log, sem expandir o corpo. */
+    public String renderizarAssunto(String nome, Map<String, String> variaveis) {
+        Compilado c = compilado(nome).orElseThrow(() -> naoEncontrado(nome));
+        return c.assunto() != null ? c.assunto().renderizar(variaveis, false) : null;
+    }
+
+    public Renderizado renderizar(String nome, Map<String, String> variaveis) {
+        Compilado c = compilado(nome).orElseThrow(() -> naoEncontrado(nome));
+        return new Renderizado(
+                c.assunto() != null ? c.assunto().renderizar(variaveis, false) : null,
+                c.texto() != null ? c.texto().renderizar(variaveis, false) : null,
+                c.html() != null ? c.html().renderizar(variaveis, true) : null,
+                c.versao());
+    }
+
+    /** Versão atual do template (do cache compilado, sem renderizar). */
+    public String versao(String nome) {
+        return compilado(nome).orElseThrow(() -> naoEncontrado(nome)).versao();
+    }
+
+    public List<EmailTemplate> listar() {
+        return templateRepository.findAll();
+    }
+
+    @Transactional
+    public EmailTemplate salvar(EmailTemplate template) {
+        if (!NOME_VALIDO.matcher(template.getNome() == null ? "" : template.getNome()).matches()) {
+            throw new IllegalArgumentException("nome de template inválido");
+        }
+        if (template.getCorpoTexto() == null && template.getCorpoHtml() == null) {
+            throw new IllegalArgumentException("informe corpoTexto e/ou corpoHtml");
+        }
+        template.setAtualizadoEm(LocalDateTime.now());
+        EmailTemplate salvo = templateRepository.save(template);
+        invalidar(salvo.getNome());
+        return salvo;
+    }
+
+    public void invalidar(String nome) {
+        lock.lock();
+        try {
+            cache.remove(nome);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Optional<Compilado> compilado(String nome) {
+        if (nome == null || !NOME_VALIDO.matcher(nome).matches()) {
+            return Optional.empty();
+        }
+        long agora = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Compilado c = cache.get(nome);
+            if (c != null && agora - c.carregadoEm() < ttlMs) {
+                return Optional.of(c);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // carga fora do lock (I/O); duas threads podem compilar o mesmo template — inofensivo
+        Optional<Compilado> carregado = carregar(nome, agora);
+        carregado.ifPresent(c -> {
+            lock.lock();
+            try {
+                cache.put(nome, c);
+            } finally {
+                lock.unlock();
+            }
+        });
+        return carregado;
+    }
+
+    private Optional<Compilado> carregar(String nome, long agora) {
+        Optional<EmailTemplate> doBanco = templateRepository.findById(nome);
+        if (doBanco.isPresent()) {
+            EmailTemplate t = doBanco.get();
+            return Optional.of(new Compilado(
+                    CompiledTemplate.compilar(t.getAssunto()),
+                    CompiledTemplate.compilar(t.getCorpoTexto()),
+                    CompiledTemplate.compilar(t.getCorpoHtml()),
+                    versao(t.getAssunto(), t.getCorpoTexto(), t.getCorpoHtml()),
+                    agora));
+        }
+
+        String texto = lerClasspath(nome + ".txt");
+        String html = lerClasspath(nome + ".html");
+        if (texto == null && html == null) {
+            return Optional.empty();
+        }
+        String assunto = lerClasspath(nome + ".subject");
+        if (assunto != null) {
+            assunto = assunto.strip();
+        }
+        return Optional.of(new Compilado(
+                CompiledTemplate.compilar(assunto),
+                CompiledTemplate.compilar(texto),
+                CompiledTemplate.compilar(html),
+                versao(assunto, texto, html),
+                agora));
+    }
+
+    // null e "" diferem (prefixo por parte), para que mover texto entre partes mude a versão
+    private static String versao(String... partes) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            for (String parte : partes) {
+                if (parte == null) {
+                    sha256.update((byte) 0);
+                } else {
+                    sha256.update((byte) 1);
+                    byte[] bytes = parte.getBytes(StandardCharsets.UTF_8);
+                    sha256.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+                    sha256.update(bytes);
+                }
+            }
+            return HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private String lerClasspath(String arquivo) {
+        Resource resource = resourceLoader.getResource(PASTA + arquivo);
+        if (!resource.exists()) {
+            return null;
+        }
+        try (InputStream in = resource.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Falha ao ler template " + arquivo, e);
+        }
+    }
+
+    private static IllegalArgumentException naoEncontrado(String nome) {
+        return new IllegalArgumentException("template não encontrado: " + nome);
+    }
+}
@@ -0,0 +1,158 @@
+package com.notificacao.service;
+
+import com.notificacao.model.Prioridade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Timing wheel hierárquica (o desenho do Kafka): o nível 0 tem {@code slots} baldes
+ * de {@code tickMs}; cada nível acima cobre {@code slots} vezes o intervalo do anterior
+ * e é criado sob demanda. Agendar é O(1): calcula o balde e anexa.
+ *
+ * Só os baldes com entradas vão para uma DelayQueue, então a thread do relógio dorme
+ * até o próximo vencimento em vez de girar a cada tick. Quando um balde de nível alto
+ * vence, suas entradas descem para níveis mais finos até vencerem de fato.
+ */
+final class TimingWheel {
+
+    record Entrada(long id, Prioridade prioridade, long vencimentoMs) {}
+
+    private final DelayQueue<Balde> baldesAtivos = new DelayQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Nivel raiz;
+    private int tamanho;
+
+    TimingWheel(long tickMs, int slots, long inicioMs) {
+        this.raiz = new Nivel(tickMs, slots, inicioMs);
+    }
+
+    /** false se a entrada já venceu — quem chamou deve entregá-la na hora. */
+    boolean agendar(Entrada entrada) {
+        lock.lock();
+        try {
+            if (raiz.adicionar(entrada)) {
+                tamanho++;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bloqueia até algum balde vencer e devolve as entradas vencidas (pode ser vazio). */
+    List<Entrada> proximasVencidas() throws InterruptedException {
+        Balde balde = baldesAtivos.take();
+        List<Entrada> vencidas = new ArrayList<>();
+        lock.lock();
+        try {
+            while (balde != null) {
+                raiz.avancar(balde.expiracaoMs);
+                for (Entrada entrada : balde.esvaziar()) {
+                    if (!raiz.adicionar(entrada)) {
+                        tamanho--;
+                        vencidas.add(entrada);
+                    }
+                }
+                balde = baldesAtivos.poll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return vencidas;
+    }
+
+    int tamanho() {
+        lock.lock();
+        try {
+            return tamanho;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private final class Nivel {
+        final long tickMs;
+        final int slots;
+        final long intervaloMs;
+        final Balde[] baldes;
+        long atualMs;
+        Nivel superior;
+
+        Nivel(long tickMs, int slots, long inicioMs) {
+            this.tickMs = tickMs;
+            this.slots = slots;
+            this.intervaloMs = tickMs * slots;
+            this.atualMs = inicioMs - (inicioMs % tickMs);
+            this.baldes = new Balde[slots];
+            for (int i = 0; i < slots; i++) {
+                baldes[i] = new Balde();
+            }
+        }
+
+        boolean adicionar(Entrada entrada) {
+            long vencimento = entrada.vencimentoMs();
+            if (vencimento < atualMs + tickMs) {
+                return false;
+            }
+            if (vencimento < atualMs + intervaloMs) {
+                long virtual = vencimento / tickMs;
+                Balde balde = baldes[(int) (virtual % slots)];
+                balde.entradas.add(entrada);
+                // balde reaproveitado: só volta para a DelayQueue quando ganha uma nova expiração
+                if (balde.definirExpiracao(virtual * tickMs)) {
+                    baldesAtivos.offer(balde);
+                }
+                return true;
+            }
+            if (superior == null) {
+                superior = new Nivel(intervaloMs, slots, atualMs);
+            }
+            return superior.adicionar(entrada);
+        }
+
+        void avancar(long ms) {
+            if (ms >= atualMs + tickMs) {
+                atualMs = ms - (ms % tickMs);
+                if (superior != null) {
+                    superior.avancar(atualMs);
+                }
+            }
+        }
+    }
+
+    private static final class Balde implements Delayed {
+        List<Entrada> entradas = new ArrayList<>();
+        volatile long expiracaoMs = -1;
+
+        boolean definirExpiracao(long ms) {
+            if (expiracaoMs == ms) {
+                return false;
+            }
+            expiracaoMs = ms;
+            return true;
+        }
+
+        List<Entrada> esvaziar() {
+            List<Entrada> atuais = entradas;
+            entradas = new ArrayList<>();
+            expiracaoMs = -1;
+            return atuais;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(0, expiracaoMs - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed outro) {
+            return Long.compare(expiracaoMs, ((Balde) outro).expiracaoMs);
+        }
+    }
+}
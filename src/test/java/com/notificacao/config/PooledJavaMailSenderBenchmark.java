@@ -0,0 +1,164 @@
+package com.notificacao.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.mail.SimpleMailMessage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmark: 10k envios simultâneos, cada um numa virtual thread, contra um SMTP
+ * local lento. Mostra que os envios ficam "em voo" estacionados no pool sem
+ * esgotar threads de plataforma.
+ *
+ * O pool fica abaixo do paralelismo do scheduler de virtual threads (o SMTPTransport
+ * prende a carrier durante o I/O) e o SMTP falso roda em threads de plataforma: se
+ * também rodasse em virtual threads, as carriers presas pelos clientes impediriam o
+ * servidor de responder.
+ *
+ * Rodar com: mvn test -Dtest=PooledJavaMailSenderBenchmark -Dbenchmark=true -Djdk.tracePinnedThreads=short
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class PooledJavaMailSenderBenchmark {
+
+    private static final int TOTAL = 10_000;
+    // paralelismo padrão = núcleos; uma carrier fica livre para os envios que esperam no semáforo
+    private static final int PARALELISMO = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+            Runtime.getRuntime().availableProcessors());
+    private static final int CONEXOES = Math.max(1, Math.min(8, PARALELISMO - 1));
+    private static final long ATRASO_SMTP_MS = 5;
+
+    @Test
+    void dezMilEnviosEmVooComVirtualThreads() throws Exception {
+        try (SmtpLento smtp = new SmtpLento(ATRASO_SMTP_MS)) {
+            PooledJavaMailSender sender = new PooledJavaMailSender(
+                    "bench", CONEXOES, 0, 1_000, 60_000, 5_000, 600_000, new SimpleMeterRegistry());
+            sender.setHost("localhost");
+            sender.setPort(smtp.porta());
+
+            AtomicInteger emVoo = new AtomicInteger();
+            AtomicInteger pico = new AtomicInteger();
+            AtomicInteger enviados = new AtomicInteger();
+
+            long inicio = System.nanoTime();
+            try (ExecutorService exec = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < TOTAL; i++) {
+                    int n = i;
+                    exec.submit(() -> {
+                        pico.accumulateAndGet(emVoo.incrementAndGet(), Math::max);
+                        try {
+                            SimpleMailMessage msg = new SimpleMailMessage();
+                            msg.setFrom("bench@localhost");
+                            msg.setTo("dest" + n + "@localhost");
+                            msg.setSubject("bench " + n);
+                            msg.setText("corpo " + n);
+                            sender.send(msg);
+                            enviados.incrementAndGet();
+                        } finally {
+                            emVoo.decrementAndGet();
+                        }
+                    });
+                }
+            }
+            long ms = (System.nanoTime() - inicio) / 1_000_000;
+            sender.destroy();
+
+            System.out.printf("paralelismo=%d pool=%d enviados=%d pico_em_voo=%d tempo=%dms throughput=%.0f msg/s conexoes_smtp=%d pico_conexoes=%d%n",
+                    PARALELISMO, CONEXOES, enviados.get(), pico.get(), ms, enviados.get() * 1000.0 / ms,
+                    smtp.conexoes.get(), smtp.picoAbertas.get());
+
+            assertEquals(TOTAL, enviados.get());
+            assertTrue(pico.get() > CONEXOES, "os envios deveriam ficar em voo além do tamanho do pool");
+            // conexões são recicladas a cada max-messages-per-connection: o limite vale para as abertas ao mesmo tempo
+            assertTrue(smtp.picoAbertas.get() <= CONEXOES, "o pool não deveria manter mais conexões abertas que o limite");
+        }
+    }
+
+    /** SMTP mínimo (threads de plataforma) que responde tudo com sucesso, atrasando cada DATA. */
+    static final class SmtpLento implements AutoCloseable {
+
+        final AtomicInteger conexoes = new AtomicInteger();
+        final AtomicInteger abertas = new AtomicInteger();
+        final AtomicInteger picoAbertas = new AtomicInteger();
+        private final ServerSocket server;
+        private final long atrasoMs;
+
+        SmtpLento(long atrasoMs) throws IOException {
+            this.atrasoMs = atrasoMs;
+            this.server = new ServerSocket(0, 1024);
+            Thread.ofPlatform().daemon().name("smtp-lento-accept").start(this::aceitar);
+        }
+
+        int porta() {
+            return server.getLocalPort();
+        }
+
+        private void aceitar() {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    conexoes.incrementAndGet();
+                    picoAbertas.accumulateAndGet(abertas.incrementAndGet(), Math::max);
+                    Thread.ofPlatform().daemon().name("smtp-lento-" + conexoes.get()).start(() -> atender(socket));
+                } catch (IOException ex) {
+                    return;
+                }
+            }
+        }
+
+        private void atender(Socket socket) {
+            try (socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                 OutputStream out = socket.getOutputStream()) {
+                responder(out, "220 localhost ESMTP bench");
+                String linha;
+                while ((linha = in.readLine()) != null) {
+                    String cmd = linha.length() >= 4 ? linha.substring(0, 4).toUpperCase() : linha.toUpperCase();
+                    switch (cmd) {
+                        case "EHLO", "HELO" -> responder(out, "250 localhost");
+                        case "DATA" -> {
+                            responder(out, "354 fim com <CRLF>.<CRLF>");
+                            while ((linha = in.readLine()) != null && !linha.equals(".")) {
+                                // descarta o corpo
+                            }
+                            Thread.sleep(atrasoMs);
+                            responder(out, "250 OK");
+                        }
+                        case "QUIT" -> {
+                            responder(out, "221 bye");
+                            return;
+                        }
+                        default -> responder(out, "250 OK"); // MAIL, RCPT, RSET, NOOP
+                    }
+                }
+            } catch (IOException | InterruptedException ignored) {
+                // conexão encerrada pelo cliente
+            } finally {
+                abertas.decrementAndGet();
+            }
+        }
+
+        private static void responder(OutputStream out, String linha) throws IOException {
+            out.write((linha + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
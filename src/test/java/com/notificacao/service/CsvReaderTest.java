@@ -0,0 +1,80 @@
+package com.notificacao.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CsvReaderTest {
+
+    @Test
+    void separadorDentroDeAspasFicaNoCampo() throws IOException {
+        assertEquals(List.of(List.of("email", "nome"), List.of("a@x.com", "Silva, Ana")),
+                ler("email,nome\na@x.com,\"Silva, Ana\"\n", ','));
+        assertEquals(List.of(List.of("a@x.com", "Silva; Ana")),
+                ler("a@x.com;\"Silva; Ana\"", ';'));
+    }
+
+    @Test
+    void quebraDeLinhaDentroDeAspasNaoTerminaORegistro() throws IOException {
+        assertEquals(List.of(List.of("a@x.com", "linha 1\r\nlinha 2"), List.of("b@x.com", "ok")),
+                ler("a@x.com,\"linha 1\r\nlinha 2\"\r\nb@x.com,ok\r\n", ','));
+        assertEquals(List.of(List.of("a@x.com", "linha 1\nlinha 2")),
+                ler("a@x.com,\"linha 1\nlinha 2\"", ','));
+    }
+
+    @Test
+    void aspasDuplasViramUmaAspa() throws IOException {
+        assertEquals(List.of(List.of("a@x.com", "disse \"oi\"", "\"", "")),
+                ler("a@x.com,\"disse \"\"oi\"\"\",\"\"\"\",\"\"\n", ','));
+    }
+
+    @Test
+    void crlfELfTerminamORegistro() throws IOException {
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d"), List.of("e", "f")),
+                ler("a,b\r\nc,d\ne,f", ','));
+    }
+
+    @Test
+    void bomDoInicioEDescartado() throws IOException {
+        assertEquals(List.of(List.of("email", "nome"), List.of("a@x.com", "Ana")),
+                ler("\uFEFFemail,nome\r\na@x.com,Ana\r\n", ','));
+        // BOM só conta no início do arquivo
+        assertEquals(List.of(List.of("a"), List.of("\uFEFFb")), ler("a\n\uFEFFb", ','));
+    }
+
+    @Test
+    void registrosIrregularesVoltamComoEstao() throws IOException {
+        assertEquals(List.of(List.of("email", "nome", "cidade"), List.of("a@x.com"),
+                        List.of("b@x.com", "Bia", "Recife", "extra"), List.of("c@x.com", "", "")),
+                ler("email,nome,cidade\na@x.com\nb@x.com,Bia,Recife,extra\nc@x.com,,\n", ','));
+    }
+
+    @Test
+    void linhasEmBrancoSaoPuladas() throws IOException {
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d")), ler("\r\na,b\n\n\r\nc,d\n\n", ','));
+    }
+
+    @Test
+    void arquivoVazioNaoTemRegistros() throws IOException {
+        CsvReader csv = new CsvReader(new BufferedReader(new StringReader("")), ',');
+        assertNull(csv.proximo());
+        assertNull(csv.proximo());
+    }
+
+    private static List<List<String>> ler(String conteudo, char separador) throws IOException {
+        CsvReader csv = new CsvReader(new BufferedReader(new StringReader(conteudo)), separador);
+        List<List<String>> registros = new ArrayList<>();
+        List<String> campos;
+        while ((campos = csv.proximo()) != null) {
+            registros.add(campos);
+        }
+        return registros;
+    }
+}